@@ -0,0 +1,56 @@
+package com.example.lockmeow;
+
+/**
+ * Política de intervalo adaptativo para el ciclo de detección: sondea rápido tras
+ * un cambio de aplicación y se va espaciando mientras el primer plano no cambia
+ */
+public class AdaptivePollingPolicy {
+    public static final long MIN_INTERVAL_MS = 500;
+    public static final long MAX_INTERVAL_MS = 3000;
+    // Ciclos sin cambios a intervalo mínimo antes de empezar a espaciar
+    private static final int IDLE_TICKS_BEFORE_BACKOFF = 4;
+
+    private long interval = MIN_INTERVAL_MS;
+    private int idleTicks;
+    // Fijo en el mínimo mientras haya un bloqueo en pantalla, para retirarlo en cuanto se sale de la app
+    private boolean pinned;
+
+    /**
+     * Registra el resultado de un ciclo de detección
+     */
+    public synchronized void onTick(boolean foregroundChanged) {
+        if (foregroundChanged) {
+            reset();
+            return;
+        }
+        idleTicks++;
+        if (idleTicks >= IDLE_TICKS_BEFORE_BACKOFF) {
+            interval = Math.min(interval * 2, MAX_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Vuelve al sondeo rápido (pantalla encendida, usuario presente o cambio de app)
+     */
+    public synchronized void reset() {
+        interval = MIN_INTERVAL_MS;
+        idleTicks = 0;
+    }
+
+    /**
+     * Mantiene el sondeo rápido mientras pinned sea true
+     */
+    public synchronized void setPinned(boolean pinned) {
+        this.pinned = pinned;
+        if (pinned) {
+            reset();
+        }
+    }
+
+    /**
+     * Retorna la espera hasta el siguiente ciclo
+     */
+    public synchronized long nextDelay() {
+        return pinned ? MIN_INTERVAL_MS : interval;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.lockmeow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instantánea inmutable del catálogo de apps que publica AppCatalogCache. La comparten
+ * alarmActivity (apps con launcher), AppDataManager (apps del usuario) y el servicio
+ * (nombres para la superposición), así nadie vuelve a recorrer el PackageManager
+ */
+public final class AppCatalog {
+    public static final AppCatalog EMPTY = new AppCatalog(Collections.<AppCatalogCache.Entry>emptyList());
+
+    private final Map<String, AppCatalogCache.Entry> byPackage;
+    private final List<AppCatalogCache.Entry> launcherApps;
+    private final List<AppCatalogCache.Entry> userApps;
+
+    AppCatalog(Collection<AppCatalogCache.Entry> entries) {
+        Map<String, AppCatalogCache.Entry> map = new HashMap<>();
+        List<AppCatalogCache.Entry> launcher = new ArrayList<>();
+        List<AppCatalogCache.Entry> user = new ArrayList<>();
+        for (AppCatalogCache.Entry entry : entries) {
+            map.put(entry.getPackageName(), entry);
+            if (entry.hasLauncher()) {
+                launcher.add(entry);
+            }
+            if (!entry.isSystem()) {
+                user.add(entry);
+            }
+        }
+        // Orden alfabético para que la lista no dependa del orden de instalación
+        Collections.sort(launcher, (a, b) -> a.getLabel().compareToIgnoreCase(b.getLabel()));
+        this.byPackage = Collections.unmodifiableMap(map);
+        this.launcherApps = Collections.unmodifiableList(launcher);
+        this.userApps = Collections.unmodifiableList(user);
+    }
+
+    /**
+     * Retorna la entrada del paquete, o null si no está en el catálogo
+     */
+    public AppCatalogCache.Entry get(String packageName) {
+        return byPackage.get(packageName);
+    }
+
+    /**
+     * Apps que se muestran en la lista de bloqueo: las que tienen actividad de launcher
+     */
+    public List<AppCatalogCache.Entry> getLauncherApps() {
+        return launcherApps;
+    }
+
+    /**
+     * Apps instaladas por el usuario, con o sin launcher
+     */
+    public List<AppCatalogCache.Entry> getUserApps() {
+        return userApps;
+    }
+
+    public int size() {
+        return byPackage.size();
+    }
+}
@@ -0,0 +1,549 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Catálogo de apps instaladas guardado en disco: nombre, versión, fecha de actualización
+ * y flags; los iconos se guardan aparte en IconCache. Al arrancar se lee tal cual y
+ * después se compara con el PackageManager usando solo lastUpdateTime/versionCode, de
+ * modo que loadLabel y loadIcon solo se pagan por los paquetes nuevos o actualizados.
+ * Los nombres dependen del idioma: el catálogo guarda los locales con que se cargaron y
+ * si el sistema cambió de idioma el siguiente diff vuelve a cargarlos todos
+ */
+public class AppCatalogCache {
+    private static final String TAG = "AppCatalogCache";
+    private static final String FILE_NAME = "app_catalog.dat";
+    private static final int MAGIC = 0x4C4B4331; // "LKC1"
+    private static final int VERSION = 2;
+    private static AppCatalogCache instance;
+
+    public static final int FLAG_SYSTEM = 1;
+    public static final int FLAG_LAUNCHER = 1 << 1;
+
+    /**
+     * Datos de una app tal como se guardan en el catálogo
+     */
+    public static final class Entry {
+        private final String packageName;
+        private final String label;
+        private final long lastUpdateTime;
+        private final long versionCode;
+        private final int flags;
+
+        Entry(String packageName, String label, long lastUpdateTime, long versionCode, int flags) {
+            this.packageName = packageName;
+            this.label = label;
+            this.lastUpdateTime = lastUpdateTime;
+            this.versionCode = versionCode;
+            this.flags = flags;
+        }
+
+        public String getPackageName() { return packageName; }
+        public String getLabel() { return label; }
+        public long getLastUpdateTime() { return lastUpdateTime; }
+        public long getVersionCode() { return versionCode; }
+        public boolean isSystem() { return (flags & FLAG_SYSTEM) != 0; }
+        public boolean hasLauncher() { return (flags & FLAG_LAUNCHER) != 0; }
+
+        int getFlags() { return flags; }
+    }
+
+    /**
+     * Diferencias entre el catálogo guardado y el PackageManager
+     */
+    public static final class Diff {
+        final List<PackageInfo> changed = new ArrayList<>();
+        final Set<String> launcher = new HashSet<>();
+        public final List<String> removed = new ArrayList<>();
+        // Locales del sistema al compararlo; finishScan() los anota como los de los nombres
+        String locales = "";
+
+        public int getChangedCount() {
+            return changed.size();
+        }
+
+        public boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+
+        public boolean hasLauncher(String packageName) {
+            return launcher.contains(packageName);
+        }
+    }
+
+    /**
+     * Escaneo completo en curso. Solo lo ejecuta quien lo reservó con beginScan(); el resto
+     * de llamadores espera su diff con awaitScan() en vez de recorrer otra vez el PackageManager
+     */
+    static final class Scan {
+        private final CountDownLatch done = new CountDownLatch(1);
+        // null si se abandonó sin terminar
+        private volatile Diff diff;
+    }
+
+    private final PackageManager packageManager;
+    private final File file;
+    private final IconCache icons;
+    // Entradas por paquete; se protegen con el monitor de la instancia
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+    // Locales del sistema con que se cargaron los nombres guardados
+    private String labelLocales = "";
+    // Instantánea de las entradas; null si cambiaron desde que se construyó
+    private AppCatalog catalog;
+    private volatile AppCatalog published = AppCatalog.EMPTY;
+    // Hubo un escaneo completo en este proceso y desde entonces llegan los broadcasts de paquetes
+    private volatile boolean scanned;
+    private volatile boolean tracking;
+    private Scan scan;
+    // Serializa save(): cada escritura toma la copia más reciente y reemplaza el archivo sola
+    private final Object saveLock = new Object();
+    private Handler worker;
+
+    private AppCatalogCache(Context context) {
+        this.packageManager = context.getPackageManager();
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.icons = IconCache.getInstance(context);
+    }
+
+    public static synchronized AppCatalogCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppCatalogCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna la instantánea inmutable del catálogo; la primera llamada lee el archivo
+     */
+    public synchronized AppCatalog getCatalog() {
+        ensureLoaded();
+        if (catalog == null) {
+            catalog = new AppCatalog(entries.values());
+            published = catalog;
+        }
+        return catalog;
+    }
+
+    /**
+     * Última instantánea publicada, sin leer el disco; vacía si aún no se cargó
+     */
+    public AppCatalog peekCatalog() {
+        return published;
+    }
+
+    /**
+     * ApplockService avisa si tiene registrado el receptor de broadcasts de paquetes
+     */
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    /**
+     * Verdadero si el catálogo ya se comparó con el PackageManager y los broadcasts lo
+     * mantienen al día, de modo que no hace falta otro escaneo
+     */
+    public boolean isCurrent() {
+        return scanned && tracking;
+    }
+
+    /**
+     * El sistema cambió de idioma: los nombres guardados ya no valen, así que el catálogo
+     * deja de estar al día y se vuelve a comparar en el hilo del catálogo
+     */
+    public void onLocaleChanged() {
+        scanned = false;
+        refreshAsync();
+    }
+
+    /**
+     * Marca el catálogo como comparado; lo llama quien aplicó un diff completo
+     */
+    public void markScanned() {
+        scanned = true;
+        getCatalog();
+    }
+
+    public synchronized Entry get(String packageName) {
+        ensureLoaded();
+        return entries.get(packageName);
+    }
+
+    /**
+     * Compara con el PackageManager sin cargar nombres ni iconos. Es el único recorrido
+     * del PackageManager: las actividades de launcher se indexan en un HashSet y los
+     * paquetes instalados se cruzan con él en una sola pasada. Si los nombres se cargaron
+     * con otros locales, todos los paquetes cuentan como cambiados
+     */
+    public Diff diff() {
+        List<PackageInfo> installed = packageManager.getInstalledPackages(0);
+        Diff diff = new Diff();
+        diff.locales = currentLocales();
+        List<ResolveInfo> launchable = packageManager.queryIntentActivities(
+                new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER), 0);
+        for (ResolveInfo resolveInfo : launchable) {
+            diff.launcher.add(resolveInfo.activityInfo.packageName);
+        }
+        synchronized (this) {
+            ensureLoaded();
+            boolean relabel = !diff.locales.equals(labelLocales);
+            Set<String> present = new HashSet<>();
+            for (PackageInfo info : installed) {
+                boolean hasLauncher = diff.launcher.contains(info.packageName);
+                // Solo interesan las apps con launcher y las instaladas por el usuario
+                if (!hasLauncher && (info.applicationInfo == null
+                        || (info.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)) {
+                    continue;
+                }
+                present.add(info.packageName);
+                Entry entry = entries.get(info.packageName);
+                if (entry == null || relabel || entry.lastUpdateTime != info.lastUpdateTime
+                        || entry.versionCode != versionCode(info)
+                        || entry.hasLauncher() != hasLauncher
+                        || !icons.isOnDisk(info.packageName)) {
+                    diff.changed.add(info);
+                }
+            }
+            for (String packageName : entries.keySet()) {
+                if (!present.contains(packageName)) {
+                    diff.removed.add(packageName);
+                }
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Aplica las bajas de un diff y retorna los paquetes que hay que volver a cargar
+     */
+    public List<PackageInfo> applyRemovals(Diff diff) {
+        synchronized (this) {
+            for (String packageName : diff.removed) {
+                if (entries.remove(packageName) != null) {
+                    dirty = true;
+                    catalog = null;
+                }
+            }
+        }
+        for (String packageName : diff.removed) {
+            icons.remove(packageName);
+        }
+        return diff.changed;
+    }
+
+    /**
+     * Carga el nombre de un paquete nuevo o actualizado y lo guarda en el catálogo.
+     * Junto con updateIcon es la única operación costosa; se llama fuera del hilo principal
+     */
+    public Entry update(PackageInfo info, boolean hasLauncher) {
+        ApplicationInfo appInfo = info.applicationInfo;
+        if (appInfo == null) {
+            return null;
+        }
+        String label = appInfo.loadLabel(packageManager).toString();
+        int flags = ((appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0 ? FLAG_SYSTEM : 0)
+                | (hasLauncher ? FLAG_LAUNCHER : 0);
+        Entry entry = new Entry(info.packageName, label, info.lastUpdateTime, versionCode(info), flags);
+        synchronized (this) {
+            entries.put(info.packageName, entry);
+            dirty = true;
+            catalog = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Carga el icono de un paquete y lo entrega a IconCache, que lo reduce y lo guarda
+     */
+    public void updateIcon(PackageInfo info) {
+        if (info.applicationInfo != null) {
+            icons.put(info.packageName, info.applicationInfo.loadIcon(packageManager));
+        }
+    }
+
+    /**
+     * Reserva el escaneo completo; retorna null si ya hay uno en curso, que se espera con
+     * awaitScan(). Quien lo reserva debe cerrarlo con finishScan() o abandonScan()
+     */
+    synchronized Scan beginScan() {
+        if (scan != null) {
+            return null;
+        }
+        scan = new Scan();
+        return scan;
+    }
+
+    /**
+     * Cierra el escaneo reservado: marca el catálogo, lo guarda y entrega el diff a quien espera
+     */
+    void finishScan(Scan owned, Diff diff) {
+        synchronized (this) {
+            if (!diff.locales.equals(labelLocales)) {
+                labelLocales = diff.locales;
+                dirty = true;
+            }
+        }
+        if (diff.locales.equals(currentLocales())) {
+            markScanned();
+        } else {
+            // El idioma cambió durante el escaneo: se publica, pero el siguiente refresh() compara otra vez
+            getCatalog();
+        }
+        save();
+        release(owned, diff);
+    }
+
+    /**
+     * Libera el escaneo sin terminarlo; quien lo esperaba vuelve a intentarlo
+     */
+    void abandonScan(Scan owned) {
+        release(owned, null);
+    }
+
+    private void release(Scan owned, Diff diff) {
+        synchronized (this) {
+            if (scan != owned) {
+                return;
+            }
+            scan = null;
+        }
+        owned.diff = diff;
+        owned.done.countDown();
+    }
+
+    /**
+     * Espera al escaneo en curso y retorna su diff, ya aplicado al catálogo. Retorna null si
+     * no había ninguno o se abandonó: el llamador decide si reserva uno propio
+     */
+    Diff awaitScan() {
+        Scan current;
+        synchronized (this) {
+            current = scan;
+        }
+        if (current == null) {
+            return null;
+        }
+        try {
+            current.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Diff();
+        }
+        return current.diff;
+    }
+
+    /**
+     * Diff completo más la recarga de los paquetes cambiados, en el hilo que llama.
+     * Si el catálogo ya está al día no vuelve a recorrer el PackageManager, y si otro hilo
+     * ya está escaneando espera a ese escaneo y retorna su diff
+     */
+    public Diff refresh() {
+        while (!isCurrent()) {
+            Scan owned = beginScan();
+            if (owned == null) {
+                Diff diff = awaitScan();
+                if (diff != null) {
+                    return diff;
+                }
+                continue;
+            }
+            Diff diff;
+            boolean completed = false;
+            try {
+                diff = diff();
+                for (PackageInfo info : applyRemovals(diff)) {
+                    update(info, diff.hasLauncher(info.packageName));
+                    updateIcon(info);
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    abandonScan(owned);
+                }
+            }
+            finishScan(owned, diff);
+            return diff;
+        }
+        return new Diff();
+    }
+
+    /**
+     * refresh() en el hilo del catálogo; el servicio lo usa al arrancar
+     */
+    public void refreshAsync() {
+        worker().post(this::refresh);
+    }
+
+    /**
+     * Actualiza el catálogo a partir de PACKAGE_ADDED/REMOVED/CHANGED, en el hilo del catálogo
+     */
+    public void onPackageBroadcast(Intent intent) {
+        if (intent.getData() == null) {
+            return;
+        }
+        String packageName = intent.getData().getSchemeSpecificPart();
+        String action = intent.getAction();
+        boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        worker().post(() -> {
+            if (Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
+                // Una actualización llega como REMOVED + ADDED; solo se borra si se desinstaló
+                if (!replacing) {
+                    synchronized (this) {
+                        ensureLoaded();
+                        if (entries.remove(packageName) != null) {
+                            dirty = true;
+                            catalog = null;
+                        }
+                    }
+                    getCatalog();
+                    icons.remove(packageName);
+                    save();
+                }
+                return;
+            }
+            try {
+                PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+                boolean hasLauncher = packageManager.getLaunchIntentForPackage(packageName) != null;
+                synchronized (this) {
+                    ensureLoaded();
+                }
+                if (!hasLauncher && (info.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0) {
+                    return;
+                }
+                update(info, hasLauncher);
+                updateIcon(info);
+                getCatalog();
+                save();
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Paquete no encontrado tras " + action + ": " + packageName);
+            }
+        });
+    }
+
+    /**
+     * Escribe el catálogo si cambió, de forma atómica. Las escrituras concurrentes se
+     * ejecutan de una en una y cada una usa su propio temporal
+     */
+    public void save() {
+        synchronized (saveLock) {
+            List<Entry> copy;
+            String locales;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                copy = new ArrayList<>(entries.values());
+                locales = labelLocales;
+                dirty = false;
+            }
+            File tmp = null;
+            try {
+                tmp = File.createTempFile(FILE_NAME, ".tmp", file.getParentFile());
+                try (FileOutputStream fileStream = new FileOutputStream(tmp);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(locales);
+                    out.writeInt(copy.size());
+                    for (Entry entry : copy) {
+                        out.writeUTF(entry.packageName);
+                        out.writeUTF(entry.label);
+                        out.writeLong(entry.lastUpdateTime);
+                        out.writeLong(entry.versionCode);
+                        out.writeInt(entry.flags);
+                    }
+                    out.flush();
+                    fileStream.getFD().sync();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "No se pudo guardar el catálogo de apps", e);
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                synchronized (this) {
+                    dirty = true;
+                }
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                Log.w(TAG, "No se pudo reemplazar el catálogo de apps");
+                tmp.delete();
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            labelLocales = in.readUTF();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+                entries.put(entry.packageName, entry);
+            }
+        } catch (IOException e) {
+            // Catálogo corrupto o incompleto: se reconstruye con el siguiente diff
+            Log.w(TAG, "No se pudo leer el catálogo de apps", e);
+            entries.clear();
+            labelLocales = "";
+        }
+    }
+
+    private synchronized Handler worker() {
+        if (worker == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            worker = new Handler(thread.getLooper());
+        }
+        return worker;
+    }
+
+    /**
+     * Locales del sistema, en orden de preferencia; son los que usa loadLabel
+     */
+    private static String currentLocales() {
+        return Resources.getSystem().getConfiguration().getLocales().toLanguageTags();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long versionCode(PackageInfo info) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? info.getLongVersionCode() : info.versionCode;
+    }
+}
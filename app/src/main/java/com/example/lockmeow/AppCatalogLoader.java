@@ -0,0 +1,239 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carga el catálogo de apps con launcher en un grupo acotado de hilos y entrega los
+ * resultados por lotes al hilo principal. Las apps guardadas en AppCatalogCache se
+ * muestran enseguida y sus iconos los pide cada fila al mostrarse; en paralelo se
+ * compara el catálogo con el PackageManager y solo los paquetes nuevos o actualizados
+ * vuelven a pagar loadLabel/loadIcon. Si otro hilo ya está escaneando, se espera a ese
+ * escaneo y se entregan sus cambios
+ */
+public class AppCatalogLoader {
+    private static final int BATCH_SIZE = 24;
+    private static final int MAX_WORKERS = 4;
+
+    /**
+     * Recibe los lotes en el hilo principal. onAppsLoaded puede traer apps que ya se
+     * entregaron antes (p. ej. actualizadas): en ese caso reemplazan a las anteriores
+     */
+    public interface Listener {
+        void onAppsLoaded(List<appModel> batch);
+
+        void onIconsLoaded(List<appModel> batch);
+
+        void onAppsRemoved(List<String> packageNames);
+
+        void onCatalogLoaded();
+    }
+
+    private final AppCatalogCache cache;
+    private final SharedPreferencies preferences;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService workers;
+    // Tareas pendientes; al llegar a cero se guarda el catálogo y se cierra el grupo
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile boolean cancelled;
+    // Escaneo reservado por este cargador y su diff; null si lo ejecuta otro
+    private volatile AppCatalogCache.Scan scan;
+    private volatile AppCatalogCache.Diff scanDiff;
+
+    public AppCatalogLoader(Context context, Listener listener) {
+        this.cache = AppCatalogCache.getInstance(context);
+        this.preferences = SharedPreferencies.getInstance(context);
+        this.listener = listener;
+        int threads = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "AppCatalogLoader"));
+    }
+
+    /**
+     * Inicia la carga; la lectura del catálogo también sale del hilo principal
+     */
+    public void load() {
+        submit(this::loadCachedAndDiff);
+    }
+
+    /**
+     * Descarta las tareas pendientes y los lotes que aún no se hayan entregado
+     */
+    public void cancel() {
+        cancelled = true;
+        AppCatalogCache.Scan owned = scan;
+        if (owned != null) {
+            // Las tareas descartadas no llegarán a cerrarlo; quien lo espera lo reintenta
+            cache.abandonScan(owned);
+        }
+        workers.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void loadCachedAndDiff() {
+        List<AppCatalogCache.Entry> cached = cache.getCatalog().getLauncherApps();
+        for (int start = 0; start < cached.size(); start += BATCH_SIZE) {
+            List<appModel> batch = new ArrayList<>();
+            for (AppCatalogCache.Entry entry : cached.subList(start, Math.min(start + BATCH_SIZE, cached.size()))) {
+                batch.add(toModel(entry));
+            }
+            deliver(() -> listener.onAppsLoaded(batch));
+        }
+        // Si el servicio ya escaneó y sigue los broadcasts de paquetes, no hay nada que comparar
+        if (!cache.isCurrent()) {
+            startScan();
+        }
+    }
+
+    private void startScan() {
+        scan = cache.beginScan();
+        submit(scan != null ? this::diff : this::joinScan);
+    }
+
+    /**
+     * Espera al escaneo de otro hilo y entrega lo que cambió; sus iconos ya están guardados
+     */
+    private void joinScan() {
+        AppCatalogCache.Diff diff = cache.awaitScan();
+        if (diff == null) {
+            // El escaneo se abandonó o terminó antes de esperarlo: se reintenta si aún hace falta
+            if (!cache.isCurrent()) {
+                startScan();
+            }
+            return;
+        }
+        if (!diff.removed.isEmpty()) {
+            List<String> removed = new ArrayList<>(diff.removed);
+            deliver(() -> listener.onAppsRemoved(removed));
+        }
+        List<appModel> batch = new ArrayList<>();
+        List<String> hidden = new ArrayList<>();
+        for (PackageInfo info : diff.changed) {
+            AppCatalogCache.Entry entry = cache.get(info.packageName);
+            if (entry != null && entry.hasLauncher()) {
+                batch.add(toModel(entry));
+            } else {
+                hidden.add(info.packageName);
+            }
+        }
+        if (!batch.isEmpty()) {
+            deliver(() -> listener.onAppsLoaded(batch));
+        }
+        if (!hidden.isEmpty()) {
+            deliver(() -> listener.onAppsRemoved(hidden));
+        }
+        deliverIcons(batch);
+    }
+
+    private void diff() {
+        AppCatalogCache.Diff diff = cache.diff();
+        scanDiff = diff;
+        List<PackageInfo> changed = cache.applyRemovals(diff);
+        if (!diff.removed.isEmpty()) {
+            List<String> removed = new ArrayList<>(diff.removed);
+            deliver(() -> listener.onAppsRemoved(removed));
+        }
+        for (int start = 0; start < changed.size(); start += BATCH_SIZE) {
+            List<PackageInfo> infos = changed.subList(start, Math.min(start + BATCH_SIZE, changed.size()));
+            submit(() -> {
+                List<appModel> batch = new ArrayList<>();
+                List<String> hidden = new ArrayList<>();
+                for (PackageInfo info : infos) {
+                    if (cancelled) {
+                        return;
+                    }
+                    AppCatalogCache.Entry entry = cache.update(info, diff.hasLauncher(info.packageName));
+                    if (entry != null && entry.hasLauncher()) {
+                        batch.add(toModel(entry));
+                    } else {
+                        // Una app que perdió su launcher deja de mostrarse
+                        hidden.add(info.packageName);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    deliver(() -> listener.onAppsLoaded(batch));
+                }
+                if (!hidden.isEmpty()) {
+                    deliver(() -> listener.onAppsRemoved(hidden));
+                }
+                // El lote de iconos queda detrás de todos los lotes de nombres ya encolados
+                submit(() -> loadChangedIcons(infos, batch));
+            });
+        }
+    }
+
+    private void loadChangedIcons(List<PackageInfo> infos, List<appModel> batch) {
+        for (PackageInfo info : infos) {
+            if (cancelled) {
+                return;
+            }
+            // Los iconos de apps sin launcher también se guardan, para AppDataManager
+            cache.updateIcon(info);
+        }
+        deliverIcons(batch);
+    }
+
+    private void deliverIcons(List<appModel> batch) {
+        if (!batch.isEmpty()) {
+            deliver(() -> listener.onIconsLoaded(batch));
+        }
+    }
+
+    private appModel toModel(AppCatalogCache.Entry entry) {
+        boolean isBlocked = preferences.isAppBloqueada(entry.getPackageName(), null);
+        return new appModel(entry.getLabel(), new IconHandle(entry.getPackageName()), isBlocked ? 1 : 0,
+                entry.getPackageName());
+    }
+
+    /**
+     * Encola una tarea contando las pendientes; las tareas que encola otra tarea se
+     * cuentan antes de que esta termine, así el contador no llega a cero antes de tiempo
+     */
+    private void submit(Runnable task) {
+        if (cancelled) {
+            return;
+        }
+        outstanding.incrementAndGet();
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    if (outstanding.decrementAndGet() == 0 && !cancelled) {
+                        AppCatalogCache.Scan owned = scan;
+                        if (owned != null && scanDiff != null) {
+                            cache.finishScan(owned, scanDiff);
+                        } else if (owned != null) {
+                            cache.abandonScan(owned);
+                        }
+                        workers.shutdown();
+                        deliver(listener::onCatalogLoaded);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // cancel() cerró el grupo mientras se encolaba
+        }
+    }
+
+    private void deliver(Runnable runnable) {
+        mainHandler.post(() -> {
+            if (!cancelled) {
+                runnable.run();
+            }
+        });
+    }
+}
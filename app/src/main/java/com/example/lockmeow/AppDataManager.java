@@ -1,15 +1,20 @@
 package com.example.lockmeow;
 
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.example.lockmeow.datastructures.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Gestor de datos de la aplicación que utiliza las estructuras de datos implementadas
@@ -24,6 +29,12 @@ public class AppDataManager {
     private BinaryTree<String> sortedApps;          // Aplicaciones ordenadas (BinaryTree)
     private Graph<String> appDependencies;          // Relaciones entre apps (Graph)
     private HashTable<String, AppCacheData> appCache; // Cache de datos de apps (HashTable)
+    private boolean historyLoaded;
+    // Precarga asíncrona: las estructuras solo se modifican en el hilo principal
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
+    private boolean warmUpStarted;
+    private volatile boolean ready;
     
     // Singleton pattern
     private AppDataManager() {
@@ -53,12 +64,13 @@ public class AppDataManager {
      * Clase interna para representar una acción en el historial
      */
     public static class AppAction {
-        public enum ActionType { BLOCK, UNBLOCK, INSTALL, UNINSTALL }
+        public enum ActionType { BLOCK, UNBLOCK, REPLACE, INSTALL, UNINSTALL }
         
         private String packageName;
         private String appName;
         private ActionType action;
         private long timestamp;
+        private List<String> packages = Collections.emptyList(); // Solo en cambios masivos
         
         public AppAction(String packageName, String appName, ActionType action) {
             this.packageName = packageName;
@@ -66,15 +78,36 @@ public class AppDataManager {
             this.action = action;
             this.timestamp = System.currentTimeMillis();
         }
+
+        public AppAction(String packageName, String appName, ActionType action, long timestamp) {
+            this.packageName = packageName;
+            this.appName = appName;
+            this.action = action;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Crea una sola entrada de historial para un cambio masivo
+         */
+        public static AppAction group(ActionType action, List<String> packages, long timestamp) {
+            AppAction group = new AppAction(TextUtils.join(",", packages), packages.size() + " apps", action, timestamp);
+            group.packages = Collections.unmodifiableList(new ArrayList<>(packages));
+            return group;
+        }
         
         // Getters
         public String getPackageName() { return packageName; }
         public String getAppName() { return appName; }
         public ActionType getAction() { return action; }
         public long getTimestamp() { return timestamp; }
+        public List<String> getPackages() { return packages; }
+        public boolean isGroup() { return !packages.isEmpty(); }
         
         @Override
         public String toString() {
+            if (isGroup()) {
+                return action + ": " + appName;
+            }
             return action + ": " + appName + " (" + packageName + ")";
         }
     }
@@ -84,12 +117,12 @@ public class AppDataManager {
      */
     public static class AppCacheData {
         private String appName;
-        private Drawable icon;
+        private IconHandle icon;
         private boolean isBlocked;
         private long usageTime;
         private long lastAccessed;
         
-        public AppCacheData(String appName, Drawable icon, boolean isBlocked, long usageTime) {
+        public AppCacheData(String appName, IconHandle icon, boolean isBlocked, long usageTime) {
             this.appName = appName;
             this.icon = icon;
             this.isBlocked = isBlocked;
@@ -99,7 +132,7 @@ public class AppDataManager {
         
         // Getters y Setters
         public String getAppName() { return appName; }
-        public Drawable getIcon() { return icon; }
+        public IconHandle getIcon() { return icon; }
         public boolean isBlocked() { return isBlocked; }
         public void setBlocked(boolean blocked) { this.isBlocked = blocked; }
         public long getUsageTime() { return usageTime; }
@@ -119,6 +152,63 @@ public class AppDataManager {
         Log.d(TAG, "Acción registrada: " + newAction);
     }
     
+    /**
+     * Recupera el historial persistido en LockJournal; solo se hace una vez por proceso,
+     * después recordAction mantiene el Stack al día
+     */
+    public void loadHistory(Context context) {
+        if (!historyLoaded) {
+            loadHistory(LockJournal.getInstance(context).history());
+        }
+    }
+
+    private void loadHistory(List<LockJournal.Record> records) {
+        if (historyLoaded) {
+            return;
+        }
+        historyLoaded = true;
+        // Los bloqueos registrados antes de cargar el diario ya están en él; el resto
+        // de acciones se conserva encima de las antiguas
+        Stack<AppAction> recientes = new Stack<>();
+        while (!actionHistory.isEmpty()) {
+            AppAction action = actionHistory.pop();
+            if (action.getAction() != AppAction.ActionType.BLOCK
+                    && action.getAction() != AppAction.ActionType.UNBLOCK) {
+                recientes.push(action);
+            }
+        }
+        for (int i = 0; i < records.size(); i++) {
+            LockJournal.Record record = records.get(i);
+            if (record.getGroup() == 0) {
+                AppCacheData cached = appCache.get(record.getPackageName());
+                String appName = cached != null ? cached.getAppName() : record.getPackageName();
+                actionHistory.push(new AppAction(record.getPackageName(), appName,
+                        record.isLocked() ? AppAction.ActionType.BLOCK : AppAction.ActionType.UNBLOCK,
+                        record.getTimestamp()));
+                continue;
+            }
+            // Los registros de un mismo cambio masivo son consecutivos: se agrupan en una entrada
+            List<String> packages = new ArrayList<>();
+            int locks = 0;
+            int end = i;
+            while (end < records.size() && records.get(end).getGroup() == record.getGroup()) {
+                packages.add(records.get(end).getPackageName());
+                if (records.get(end).isLocked()) {
+                    locks++;
+                }
+                end++;
+            }
+            AppAction.ActionType type = locks == packages.size() ? AppAction.ActionType.BLOCK
+                    : locks == 0 ? AppAction.ActionType.UNBLOCK : AppAction.ActionType.REPLACE;
+            actionHistory.push(AppAction.group(type, packages, record.getTimestamp()));
+            i = end - 1;
+        }
+        while (!recientes.isEmpty()) {
+            actionHistory.push(recientes.pop());
+        }
+        Log.d(TAG, "Historial recuperado del diario: " + actionHistory.size() + " acciones");
+    }
+
     /**
      * Obtiene la última acción del historial
      */
@@ -249,7 +339,7 @@ public class AppDataManager {
     /**
      * Añade datos de una app al cache
      */
-    public void cacheAppData(String packageName, String appName, Drawable icon, 
+    public void cacheAppData(String packageName, String appName, IconHandle icon, 
                            boolean isBlocked, long usageTime) {
         AppCacheData cacheData = new AppCacheData(appName, icon, isBlocked, usageTime);
         appCache.put(packageName, cacheData);
@@ -279,6 +369,53 @@ public class AppDataManager {
         }
     }
     
+    // ==================== CAMBIOS MASIVOS ====================
+
+    /**
+     * Bloquea varias apps con una sola escritura y una sola entrada en el historial
+     */
+    public void lockAll(Context context, Collection<String> packages) {
+        applyBulk(SharedPreferencies.getInstance(context).bloquearApps(packages));
+    }
+
+    /**
+     * Desbloquea varias apps con una sola escritura y una sola entrada en el historial
+     */
+    public void unlockAll(Context context, Collection<String> packages) {
+        applyBulk(SharedPreferencies.getInstance(context).desbloquearApps(packages));
+    }
+
+    /**
+     * Reemplaza la lista completa de apps bloqueadas (p. ej. al importar una lista)
+     */
+    public void replaceSet(Context context, Collection<String> packages) {
+        applyBulk(SharedPreferencies.getInstance(context).reemplazarAppsBloqueadas(packages));
+    }
+
+    /**
+     * Actualiza la cache con lo que cambió de verdad y lo registra como una sola acción,
+     * igual que la reconstruye loadHistory() desde el diario; si nada cambió no se registra
+     */
+    private void applyBulk(SharedPreferencies.CambioMasivo cambio) {
+        if (cambio.isEmpty()) {
+            return;
+        }
+        List<String> packages = new ArrayList<>(cambio.desbloqueadas);
+        packages.addAll(cambio.bloqueadas);
+        Set<String> locked = new HashSet<>(cambio.bloqueadas);
+        for (String packageName : packages) {
+            AppCacheData data = appCache.get(packageName);
+            if (data != null) {
+                data.setBlocked(locked.contains(packageName));
+            }
+        }
+        AppAction.ActionType type = cambio.desbloqueadas.isEmpty() ? AppAction.ActionType.BLOCK
+                : cambio.bloqueadas.isEmpty() ? AppAction.ActionType.UNBLOCK : AppAction.ActionType.REPLACE;
+        AppAction group = AppAction.group(type, packages, System.currentTimeMillis());
+        actionHistory.push(group);
+        Log.d(TAG, "Acción masiva registrada: " + group);
+    }
+    
     /**
      * Verifica si una app está en cache
      */
@@ -313,29 +450,100 @@ public class AppDataManager {
     // ==================== MÉTODOS UTILITARIOS ====================
     
     /**
-     * Carga todas las aplicaciones instaladas y las organiza en las estructuras
+     * Vuelve a cargar todas las aplicaciones instaladas en las estructuras. Como warmUp(),
+     * lee disco y PackageManager en segundo plano y vuelca el resultado en el hilo
+     * principal, donde después llama a onLoaded
      */
-    public void loadInstalledApps(Context context) {
-        PackageManager packageManager = context.getPackageManager();
-        List<ApplicationInfo> installedApps = packageManager.getInstalledApplications(PackageManager.GET_META_DATA);
-        
-        for (ApplicationInfo appInfo : installedApps) {
-            // Solo procesar apps que no son del sistema o que el usuario puede ver
-            if ((appInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0) {
-                String packageName = appInfo.packageName;
-                String appName = appInfo.loadLabel(packageManager).toString();
-                Drawable icon = appInfo.loadIcon(packageManager);
-                
-                // Añadir al árbol ordenado
-                addAppToSortedList(packageName);
-                
-                // Añadir al cache
-                boolean isBlocked = SharedPreferencies.getInstance(context).isAppBloqueada(packageName, context);
-                cacheAppData(packageName, appName, icon, isBlocked, 0);
-                
-                // Añadir al grafo (cada app es un vértice)
-                appDependencies.addVertex(packageName);
+    public void loadInstalledApps(Context context, Runnable onLoaded) {
+        loadInBackground(context.getApplicationContext(), "AppDataReload", onLoaded);
+    }
+
+    /**
+     * Inicia la carga de apps e historial en segundo plano; solo la primera llamada tiene efecto.
+     * La lectura ocurre fuera del hilo principal y el resultado se vuelca en las estructuras
+     * desde el hilo principal, que es el único que las modifica. El estado de bloqueo se
+     * consulta al volcar, en el hilo principal: leído antes pisaría los cambios hechos
+     * mientras tanto
+     */
+    public void warmUp(Context context) {
+        if (warmUpStarted) {
+            return;
+        }
+        warmUpStarted = true;
+        loadInBackground(context.getApplicationContext(), "AppDataWarmUp", () -> {
+            ready = true;
+            for (Runnable callback : readyCallbacks) {
+                callback.run();
             }
+            readyCallbacks.clear();
+        });
+    }
+
+    private void loadInBackground(Context appContext, String threadName, Runnable onLoaded) {
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            List<AppCatalogCache.Entry> apps = readInstalledApps(appContext);
+            // Deja cargado el conjunto de bloqueadas; las consultas del hilo principal son O(1)
+            SharedPreferencies.getInstance(appContext).getListString();
+            List<LockJournal.Record> records = LockJournal.getInstance(appContext).history();
+            mainHandler.post(() -> {
+                addInstalledApps(apps, readBlocked(appContext, apps));
+                loadHistory(records);
+                onLoaded.run();
+            });
+        }, threadName).start();
+    }
+
+    /**
+     * Indica si la precarga de warmUp() ya terminó
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Ejecuta la acción en el hilo principal cuando la precarga termine, o enseguida si
+     * ya terminó. Se llama desde el hilo principal
+     */
+    public void whenReady(Runnable callback) {
+        if (ready) {
+            callback.run();
+        } else {
+            readyCallbacks.add(callback);
+        }
+    }
+
+    /**
+     * Apps que no son del sistema según el catálogo compartido, que antes se pone al día
+     * si hace falta; solo los paquetes que cambiaron vuelven a consultar nombre e icono
+     */
+    private List<AppCatalogCache.Entry> readInstalledApps(Context context) {
+        AppCatalogCache catalog = AppCatalogCache.getInstance(context);
+        catalog.refresh();
+        return catalog.getCatalog().getUserApps();
+    }
+
+    private boolean[] readBlocked(Context context, List<AppCatalogCache.Entry> apps) {
+        SharedPreferencies preferences = SharedPreferencies.getInstance(context);
+        boolean[] blocked = new boolean[apps.size()];
+        for (int i = 0; i < apps.size(); i++) {
+            blocked[i] = preferences.isAppBloqueada(apps.get(i).getPackageName(), context);
+        }
+        return blocked;
+    }
+
+    private void addInstalledApps(List<AppCatalogCache.Entry> apps, boolean[] blocked) {
+        for (int i = 0; i < apps.size(); i++) {
+            String packageName = apps.get(i).getPackageName();
+            
+            // Añadir al árbol ordenado
+            addAppToSortedList(packageName);
+            
+            // Añadir al cache; solo se guarda la referencia, el bitmap lo resuelve IconCache al mostrarse
+            cacheAppData(packageName, apps.get(i).getLabel(), new IconHandle(packageName), blocked[i], 0);
+            
+            // Añadir al grafo (cada app es un vértice)
+            appDependencies.addVertex(packageName);
         }
         
         Log.d(TAG, "Aplicaciones cargadas: " + sortedApps.inorderTraversal().size());
@@ -4,30 +4,57 @@ import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
 import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.TimeZone;
 
 public class ApplockService extends Service {
 
     private static final String TAG = "ApplockService";
+    private static final String ACTION_GRACE = "com.pk.applock.applock_service.grace";
+    private static final String ACTION_DUMP = "com.pk.applock.applock_service.dump";
+    private static final String LATENCY_DUMP_FILE = "lock_latency.txt";
+    private static final String EVENTS_DUMP_FILE = "detection_events.txt";
+    // Extra y motivos de ACTION_CLOSE_SYSTEM_DIALOGS; no son API pública pero los envía el sistema
+    private static final String EXTRA_REASON = "reason";
+    private static final String REASON_HOME_KEY = "homekey";
+    private static final String REASON_RECENT_APPS = "recentapps";
+    private final LockLog.Sampler switchLogSampler = new LockLog.Sampler(1000);
+    private final LockLog.Sampler startLogSampler = new LockLog.Sampler(60 * 1000);
+    private HandlerThread detectionThread;
     private Handler handler;
+    private Handler mainHandler;
+    private DetectionScheduler scheduler;
+    private AdaptivePollingPolicy pollingPolicy;
+    private PowerManager powerManager;
+    private DetectionEngine engine;
+    private LockOverlay overlay;
+    // Paquete cubierto por el último bloqueo; solo se usa en el hilo de detección
+    private String lockedForegroundPackage;
     private static PendingIntent pendingIntent;
-    private Map<String, Boolean> lockedPackages;
+    private LockPolicyStore policyStore;
+    // Diario de cambios y última secuencia aplicada a la política; solo se usan en el hilo de detección
+    private LockJournal journal;
+    private long journalSeq;
     private ActivityManager manager;
 
     @Nullable
@@ -40,14 +67,56 @@ public class ApplockService extends Service {
         return this.manager.getRunningTasks(1).get(0);
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        init();
+    }
+
     private boolean init() {
         this.manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
-        handler = new Handler();
-        lockedPackages = new HashMap<>();
-        SharedPreferencies.getInstance(this).getListString().forEach(packageName -> {
-            lockedPackages.put(packageName, true);
-            Log.d(TAG, "Aplicación añadida a la lista de bloqueos: " + packageName);
-        });
+        // La detección corre en su propio hilo; solo mostrar el bloqueo vuelve al hilo principal
+        detectionThread = new HandlerThread("ApplockDetection", Process.THREAD_PRIORITY_BACKGROUND);
+        detectionThread.start();
+        handler = new Handler(detectionThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+        overlay = new LockOverlay(this, this::confirmGrace);
+        overlay.attach();
+        pollingPolicy = new AdaptivePollingPolicy();
+        policyStore = LockPolicyStore.getInstance();
+        // Arrancar desde el archivo mapeado no lee las preferencias; el diario se consulta
+        // después, en el hilo de detección
+        LockRules rules = policyStore.load(this);
+        journalSeq = policyStore.getLoadedJournalSeq();
+        if (LockLog.VERBOSE) {
+            LockLog.d(TAG, "Aplicaciones en la lista de bloqueos: " + rules.size());
+        }
+        engine = new DetectionEngine(createForegroundSource(), createFallbackSource(),
+                policyStore::current, new LockSessionTracker(), pollingPolicy, getPackageName());
+        engine.setEventLog(LockLog.events());
+        engine.setQuotaTracker(new UsageQuotaTracker(new QuotaUsagePreferences(this)));
+        scheduler = new DetectionScheduler(handler, pollingPolicy, this::checkPackageChanged);
+        powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        IntentFilter screenFilter = new IntentFilter();
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_USER_PRESENT);
+        screenFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        screenFilter.addAction(Intent.ACTION_CLOSE_SYSTEM_DIALOGS);
+        registerReceiver(screenReceiver, screenFilter, null, handler);
+        // Desde Android 8 estos broadcasts solo llegan a receptores registrados en tiempo de ejecución
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(packageReceiver, packageFilter);
+        // Los nombres del catálogo dependen del idioma del sistema
+        registerReceiver(packageReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+        // El servicio hace el único escaneo del catálogo; con el receptor activo los demás lo reutilizan
+        AppCatalogCache catalog = AppCatalogCache.getInstance(this);
+        catalog.setTracking(true);
+        catalog.refreshAsync();
         startAlarm(this);
         return true;
     }
@@ -71,74 +140,320 @@ public class ApplockService extends Service {
         startAlarm(context);
     }
 
-    private void showLocker(String packageName) {
-        Log.d(TAG, "Mostrando la superposición de bloqueo para: " + packageName);
+    /**
+     * Pide al servicio que guarde en files/ las mediciones de latencia del bloqueo y los
+     * eventos de detección recientes; la escritura ocurre en el hilo de detección
+     */
+    public static void requestDump(Context context) {
+        Intent intent = new Intent(context, ApplockService.class);
+        intent.setAction(ACTION_DUMP);
+        context.startService(intent);
+    }
+
+    /**
+     * Pide al servicio un periodo de gracia para la app bloqueada; solo lo llama
+     * GraceConfirmActivity, después de confirmar la credencial
+     */
+    public static void requestGrace(Context context, String packageName) {
+        Intent intent = new Intent(context, ApplockService.class);
+        intent.setAction(ACTION_GRACE);
+        intent.putExtra("blockedAppPackage", packageName);
+        context.startService(intent);
+    }
+
+    /**
+     * Concede el periodo de gracia configurado; se llama en el hilo principal
+     */
+    /**
+     * El botón de gracia de la superposición no concede nada por sí mismo: se retira la
+     * superposición, que taparía la pantalla de credencial, y se pide la credencial
+     */
+    private void confirmGrace(String packageName) {
+        overlay.hide();
+        GraceConfirmActivity.start(this, packageName);
+    }
+
+    private void grantGrace(String packageName) {
+        long duration = SharedPreferencies.getInstance(this).getMinutosGracia() * 60L * 1000;
+        overlay.hide();
+        handler.post(() -> {
+            engine.grantGrace(packageName, System.currentTimeMillis(), duration);
+            scheduler.poke();
+        });
+    }
+
+    private void showLocker(String packageName, long switchTimestamp) {
+        if (LockLog.VERBOSE) {
+            LockLog.d(TAG, "Mostrando la superposición de bloqueo para: " + packageName);
+        }
         Intent intent = new Intent(this, blockActivity.class);
         intent.putExtra("blockedAppPackage", packageName);
+        intent.putExtra(LockLatencyRecorder.EXTRA_DETECTED_AT, switchTimestamp);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        startActivity(intent);
+        mainHandler.post(() -> {
+            LockLatencyRecorder.getInstance().recordLockerIssued(switchTimestamp, System.currentTimeMillis());
+            // Sin permiso de superposición se recurre a lanzar blockActivity
+            if (!overlay.show(packageName, switchTimestamp)) {
+                startActivity(intent);
+            }
+        });
     }
 
-    public void checkPackageChanged() {
-        String currentPackageName = getTopPackageName();
-        Log.d(TAG, "Aplicación actual: " + currentPackageName);
-        if (!currentPackageName.equals(getPackageName())) {  // Solo verificar si no es la misma app
-            onAppOpen(currentPackageName);
+    /**
+     * Pausa la detección con la pantalla apagada y vuelve al sondeo rápido al encenderla.
+     * También actualiza la zona horaria de las reglas por horario
+     */
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                engine.setTimeZone(TimeZone.getDefault());
+                return;
+            }
+            if (Intent.ACTION_CLOSE_SYSTEM_DIALOGS.equals(intent.getAction())) {
+                onSystemDialogsClosed(intent.getStringExtra(EXTRA_REASON));
+                return;
+            }
+            if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+                scheduler.stop();
+                engine.pause(System.currentTimeMillis());
+                return;
+            }
+            pollingPolicy.reset();
+            if (!scheduler.start()) {
+                scheduler.poke();
+            }
         }
+    };
+
+    /**
+     * Inicio o Recientes sacan la app bloqueada del primer plano: la superposición se quita
+     * sin esperar al siguiente ciclo y se pide uno inmediato. Si la app sigue delante, ese
+     * ciclo la vuelve a bloquear
+     */
+    private void onSystemDialogsClosed(String reason) {
+        if (lockedForegroundPackage == null
+                || !(REASON_HOME_KEY.equals(reason) || REASON_RECENT_APPS.equals(reason))) {
+            return;
+        }
+        LockLog.events().record(DetectionEventLog.HIDE, lockedForegroundPackage, System.currentTimeMillis());
+        engine.getSessionTracker().dismiss(lockedForegroundPackage);
+        lockedForegroundPackage = null;
+        pollingPolicy.setPinned(false);
+        mainHandler.post(overlay::hide);
+        scheduler.poke();
     }
 
-    private String getTopPackageName() {
+    /**
+     * Mantiene al día el catálogo de apps guardado, también ante un cambio de idioma; el
+     * trabajo ocurre en el hilo del catálogo
+     */
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                AppCatalogCache.getInstance(context).onLocaleChanged();
+                return;
+            }
+            AppCatalogCache.getInstance(context).onPackageBroadcast(intent);
+        }
+    };
+
+    /**
+     * Fuente principal de detección: el cursor de UsageEvents, o RunningTasks antes de Lollipop
+     */
+    private ForegroundAppSource createForegroundSource() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             UsageStatsManager usageStatsManager = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-            long time = System.currentTimeMillis();
-            List<UsageStats> stats = usageStatsManager.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, time - 1000 * 10, time);
+            return new UsageEventsCursor(usageStatsManager, System.currentTimeMillis());
+        }
+        return new RunningTasksForegroundSource(manager);
+    }
 
-            if (stats != null && !stats.isEmpty()) {
-                SortedMap<Long, UsageStats> sortedStats = new TreeMap<>();
-                for (UsageStats usageStats : stats) {
-                    sortedStats.put(usageStats.getLastTimeUsed(), usageStats);
-                }
-                return sortedStats.get(sortedStats.lastKey()).getPackageName();
+    /**
+     * Si el cursor aún no ha visto ningún evento al arrancar, las estadísticas diarias se
+     * consultan una vez para sembrar el primer plano; después solo cuentan los eventos
+     */
+    private ForegroundAppSource createFallbackSource() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            UsageStatsManager usageStatsManager = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
+            return new UsageStatsForegroundSource(usageStatsManager);
+        }
+        return null;
+    }
+
+    public void checkPackageChanged() {
+        long now = System.currentTimeMillis();
+        long switches = engine.getSwitches();
+        String packageToLock = engine.tick(now);
+        // Solo se registra cuando cambia la app en primer plano, y como mucho una vez por segundo
+        if (LockLog.VERBOSE && engine.getSwitches() != switches && switchLogSampler.sample(now)) {
+            LockLog.d(TAG, LockLog.withSuppressed("Aplicación actual: " + engine.getForegroundPackage(),
+                    switchLogSampler));
+        }
+        if (lockedForegroundPackage != null && engine.getSessionTracker().getState(lockedForegroundPackage)
+                != LockSessionTracker.State.LOCKED_SHOWN) {
+            // La app bloqueada salió del primer plano o dejó de estar bloqueada: se oculta la superposición
+            LockLog.events().record(DetectionEventLog.HIDE, lockedForegroundPackage, now);
+            lockedForegroundPackage = null;
+            pollingPolicy.setPinned(false);
+            mainHandler.post(overlay::hide);
+        }
+        if (packageToLock != null) {
+            lockedForegroundPackage = packageToLock;
+            // Con el bloqueo en pantalla el sondeo no se espacia: salir de la app lo retira en ≤ 500 ms
+            pollingPolicy.setPinned(true);
+            // La latencia se mide desde el cambio de app solo si este ciclo lo vio; los bloqueos sin
+            // cambio (fin de la gracia, cuota agotada, franja que empieza, cambio de reglas) parten de ahora
+            long trigger = engine.getSwitches() != switches ? engine.getLastSwitchTimestamp() : now;
+            onLockedAppOpen(packageToLock, trigger);
+        }
+    }
+
+    /**
+     * Aplica a la política los cambios del diario que no hayan llegado por LockPolicyStore.
+     * Los cambios son idempotentes, así que reaplicar los ya publicados no tiene efecto.
+     * Los registros de un mismo cambio masivo se publican juntos, en una sola actualización
+     */
+    private void tailJournal() {
+        if (journal == null) {
+            journal = LockJournal.getInstance(this);
+        }
+        if (journal.getLastSeq() < journalSeq) {
+            // El archivo de la política declara registros que el diario ya no tiene (p. ej. se
+            // borraron los datos): se reconstruye desde el diario y no se sigue desde esa secuencia
+            journalSeq = -1;
+        }
+        if (journal.getLastSeq() > journalSeq) {
+            // Las preferencias se leen aquí, antes de reproducir el diario, y no dentro de sus callbacks
+            policyStore.promote();
+        }
+        JournalReplay replay = new JournalReplay(policyStore);
+        long seq = journal.tail(journalSeq, replay);
+        replay.flush();
+        if (seq < 0) {
+            // La compactación se adelantó al seguimiento: se recarga la lista completa
+            List<String> locked = new ArrayList<>();
+            seq = journal.load(locked);
+            policyStore.setLocked(locked, seq);
+        }
+        journalSeq = seq;
+    }
+
+    /**
+     * Reproduce el diario sobre la política: los registros sueltos uno a uno y los de un
+     * grupo, que son consecutivos, acumulados hasta que el grupo termina
+     */
+    private static final class JournalReplay implements LockJournal.Listener {
+        private final LockPolicyStore store;
+        private final List<String> locked = new ArrayList<>();
+        private final List<String> unlocked = new ArrayList<>();
+        private long group;
+        private long groupSeq;
+
+        JournalReplay(LockPolicyStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void onLockChanged(LockJournal.Record record) {
+            if (record.getGroup() != group) {
+                flush();
             }
-        } else {
-            List<ActivityManager.RunningTaskInfo> taskInfo = manager.getRunningTasks(1);
-            if (!taskInfo.isEmpty()) {
-                return taskInfo.get(0).topActivity.getPackageName();
+            if (record.getGroup() == 0) {
+                if (record.isLocked()) {
+                    store.lock(record.getPackageName(), record.getSeq());
+                } else {
+                    store.unlock(record.getPackageName(), record.getSeq());
+                }
+                return;
             }
+            group = record.getGroup();
+            groupSeq = record.getSeq();
+            (record.isLocked() ? locked : unlocked).add(record.getPackageName());
         }
-        return "";
-    }
 
-    private void onAppOpen(String packageName) {
-        if (lockedPackages.containsKey(packageName)) {
-            onLockedAppOpen(packageName);
+        /**
+         * Publica el grupo acumulado, si lo hay
+         */
+        void flush() {
+            if (group != 0) {
+                store.applyBatch(locked, unlocked, groupSeq);
+                locked.clear();
+                unlocked.clear();
+                group = 0;
+            }
         }
     }
 
-    private void onLockedAppOpen(String packageName) {
-        Log.d(TAG, "Intentando bloquear la aplicación: " + packageName);
-        if (Boolean.TRUE.equals(lockedPackages.get(packageName))) {
-            Log.d(TAG, "Aplicación bloqueada: " + packageName);
-            showLocker(packageName);
+    private void onLockedAppOpen(String packageName, long switchTimestamp) {
+        if (LockLog.VERBOSE) {
+            LockLog.d(TAG, "Aplicación bloqueada: " + packageName);
         }
+        showLocker(packageName, switchTimestamp);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Log.d(TAG, "ApplockService se ha iniciado.");
         if (intent == null || "com.pk.applock.applock_service.start".equals(intent.getAction())) {
-            if (!init()) {
-                init();
+            // Con la pantalla apagada no hay nada que detectar; el receptor reanuda el ciclo
+            if (!powerManager.isInteractive()) {
+                return START_STICKY;
+            }
+            // El diario se reproduce antes del primer ciclo, que así ve los cambios recientes.
+            // La alarma vuelve a llamar aquí cada 5 segundos: si el ciclo ya corre, se fusiona
+            handler.post(this::tailJournal);
+            boolean started = scheduler.start();
+            if (LockLog.VERBOSE && startLogSampler.sample(SystemClock.elapsedRealtime())) {
+                LockLog.d(TAG, LockLog.withSuppressed("ApplockService se ha iniciado. Ciclo nuevo: " + started
+                        + ", reinicios fusionados: " + scheduler.getRestartsCoalesced()
+                        + ", ciclos ejecutados: " + scheduler.getTicksExecuted(), startLogSampler));
             }
-            handler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    checkPackageChanged();
-                    handler.postDelayed(this, 500); // Verificar medio segundo
-                }
-            }, 0);
+            return START_STICKY;
+        }
+        if (ACTION_GRACE.equals(intent.getAction())) {
+            String packageName = intent.getStringExtra("blockedAppPackage");
+            if (packageName != null) {
+                grantGrace(packageName);
+            }
+            return START_STICKY;
+        }
+        if (ACTION_DUMP.equals(intent.getAction())) {
+            handler.post(this::dumpDiagnostics);
             return START_STICKY;
         }
         return START_NOT_STICKY;
     }
+
+    private void dumpDiagnostics() {
+        File latency = new File(getFilesDir(), LATENCY_DUMP_FILE);
+        try {
+            LockLatencyRecorder.getInstance().dumpTo(latency);
+            Log.i(TAG, "Latencias de bloqueo guardadas en " + latency);
+        } catch (IOException e) {
+            LockLog.w(TAG, "No se pudieron guardar las latencias de bloqueo", e);
+        }
+        File events = new File(getFilesDir(), EVENTS_DUMP_FILE);
+        try {
+            LockLog.dumpEvents(events);
+            Log.i(TAG, "Eventos de detección guardados en " + events);
+        } catch (IOException e) {
+            LockLog.w(TAG, "No se pudieron guardar los eventos de detección", e);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(screenReceiver);
+        unregisterReceiver(packageReceiver);
+        AppCatalogCache.getInstance(this).setTracking(false);
+        scheduler.stop();
+        handler.removeCallbacksAndMessages(null);
+        // El contador de cuotas se guarda en el hilo de detección antes de cerrarlo
+        handler.post(() -> engine.pause(System.currentTimeMillis()));
+        mainHandler.removeCallbacksAndMessages(null);
+        overlay.detach();
+        detectionThread.quitSafely();
+        super.onDestroy();
+    }
 }
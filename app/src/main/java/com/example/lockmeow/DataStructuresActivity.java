@@ -80,8 +80,13 @@ public class DataStructuresActivity extends AppCompatActivity {
             dataManager.clearCache();
             Toast.makeText(this, "Cache limpiado", Toast.LENGTH_SHORT).show();
             updateCacheView();
-            // Recargar apps para repoblar el cache
-            dataManager.loadInstalledApps(this);
+            // Recargar apps para repoblar el cache, fuera del hilo principal
+            dataManager.loadInstalledApps(this, () -> {
+                if (!isDestroyed()) {
+                    updateAppsOrdenadasView();
+                    updateCacheView();
+                }
+            });
         });
     }
     
@@ -167,6 +172,10 @@ public class DataStructuresActivity extends AppCompatActivity {
         boolean found = dataManager.isAppInSortedList(testPackage);
         statsText.append("¿Está 'Settings' en el árbol? ").append(found ? "SÍ" : "NO").append("\n");
         
+        // Latencia entre que aparece una app bloqueada y que el bloqueo la cubre
+        statsText.append("\n=== LATENCIA DE BLOQUEO ===\n");
+        statsText.append(LockLatencyRecorder.getInstance().getSummary()).append("\n");
+        
         tvEstadisticas.setText(statsText.toString());
     }
     
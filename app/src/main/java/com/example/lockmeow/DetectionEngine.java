@@ -0,0 +1,196 @@
+package com.example.lockmeow;
+
+import com.example.lockmeow.datastructures.TimingWheel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Motor de detección independiente de Android: en cada ciclo consulta la fuente de
+ * primer plano, actualiza el intervalo de sondeo y decide si hay que bloquear
+ */
+public class DetectionEngine {
+    private final ForegroundAppSource source;
+    private final ForegroundAppSource fallback;
+    // El respaldo es costoso: se consulta una sola vez y su resultado siembra el primer plano
+    private boolean fallbackPolled;
+    private String fallbackPackage;
+    private final Supplier<LockRules> policySupplier;
+    private final LockSessionTracker sessionTracker;
+    private final AdaptivePollingPolicy pollingPolicy;
+    private final String ownPackage;
+    private DetectionEventLog eventLog;
+    private UsageQuotaTracker quotaTracker;
+
+    // Periodos de gracia tras desbloquear: la rueda avanza con cada ciclo y expira en O(1)
+    private static final long GRACE_TICK_MS = 1000;
+    private static final int GRACE_WHEEL_SLOTS = 512;
+    private TimingWheel<String> graceWheel;
+    private final Map<String, TimingWheel.Timeout<String>> graceTimers = new HashMap<>();
+    private final Consumer<String> onGraceExpired = this::expireGrace;
+    // TimeZone.getDefault() crea una copia en cada llamada, por eso se guarda
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+
+    private String foregroundPackage = "";
+    private long lastSwitchTimestamp;
+    private long ticks;
+    private long switches;
+    private long locksShown;
+
+    /**
+     * @param fallback fuente que se consulta una única vez si la principal aún no conoce el primer
+     *                 plano; su resultado se reutiliza hasta que la principal responda. Puede ser null
+     */
+    public DetectionEngine(ForegroundAppSource source, ForegroundAppSource fallback,
+                           Supplier<LockRules> policySupplier, LockSessionTracker sessionTracker,
+                           AdaptivePollingPolicy pollingPolicy, String ownPackage) {
+        this.source = source;
+        this.fallback = fallback;
+        this.policySupplier = policySupplier;
+        this.sessionTracker = sessionTracker;
+        this.pollingPolicy = pollingPolicy;
+        this.ownPackage = ownPackage;
+    }
+
+    /**
+     * Ejecuta un ciclo de detección y retorna el paquete a bloquear, o null si no hay que hacer nada
+     */
+    public String tick(long now) {
+        ticks++;
+        if (graceWheel != null) {
+            graceWheel.advance(now, onGraceExpired);
+        }
+        ForegroundAppSource used = source;
+        String packageName = source.poll(now);
+        if (packageName == null && fallback != null) {
+            if (!fallbackPolled) {
+                fallbackPolled = true;
+                fallbackPackage = fallback.poll(now);
+            }
+            used = fallback;
+            packageName = fallbackPackage;
+        }
+        if (packageName == null) {
+            packageName = "";
+        }
+        boolean changed = !packageName.equals(foregroundPackage);
+        if (changed) {
+            switches++;
+            foregroundPackage = packageName;
+            lastSwitchTimestamp = used.getLastSwitchTimestamp();
+            if (eventLog != null) {
+                eventLog.record(DetectionEventLog.SWITCH, packageName, now);
+            }
+        }
+        pollingPolicy.onTick(changed);
+
+        LockRules policy = policySupplier.get();
+        if (quotaTracker != null) {
+            quotaTracker.onTick(packageName, now, timeZone, policy);
+        }
+
+        // Nuestra propia app también pasa por el tracker para cerrar la sesión de la app bloqueada
+        boolean locked = !packageName.equals(ownPackage)
+                && (policy.isLocked(packageName, LockSchedule.minuteOfWeek(now, timeZone))
+                || (quotaTracker != null && quotaTracker.isExhausted(packageName, policy)));
+        if (sessionTracker.onForeground(packageName, locked, now)) {
+            locksShown++;
+            if (eventLog != null) {
+                eventLog.record(DetectionEventLog.LOCK, packageName, now);
+            }
+            return packageName;
+        }
+        return null;
+    }
+
+    /**
+     * Asigna el buffer donde se registran los cambios y bloqueos; puede ser null
+     */
+    public void setEventLog(DetectionEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Concede un periodo de gracia: el paquete no se bloquea hasta que expire
+     */
+    public void grantGrace(String packageName, long now, long durationMs) {
+        if (graceWheel == null) {
+            graceWheel = new TimingWheel<>(GRACE_TICK_MS, GRACE_WHEEL_SLOTS, now);
+        }
+        TimingWheel.Timeout<String> previous = graceTimers.remove(packageName);
+        if (previous != null) {
+            graceWheel.cancel(previous);
+        }
+        long deadline = now + durationMs;
+        sessionTracker.unlockUntil(packageName, deadline);
+        graceTimers.put(packageName, graceWheel.schedule(packageName, deadline));
+        if (eventLog != null) {
+            eventLog.record(DetectionEventLog.GRACE, packageName, now);
+        }
+    }
+
+    private void expireGrace(String packageName) {
+        graceTimers.remove(packageName);
+        sessionTracker.relock(packageName);
+    }
+
+    /**
+     * Retorna cuántos periodos de gracia siguen activos
+     */
+    public int getActiveGraceCount() {
+        return graceTimers.size();
+    }
+
+    /**
+     * Asigna el contador de cuotas diarias; puede ser null
+     */
+    public void setQuotaTracker(UsageQuotaTracker quotaTracker) {
+        this.quotaTracker = quotaTracker;
+    }
+
+    /**
+     * Detiene la contabilidad de uso hasta el siguiente ciclo (pantalla apagada, servicio detenido)
+     */
+    public void pause(long now) {
+        if (quotaTracker != null) {
+            quotaTracker.pause(now, timeZone, policySupplier.get());
+        }
+    }
+
+    /**
+     * Cambia la zona horaria usada para evaluar las reglas por horario
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    public String getForegroundPackage() {
+        return foregroundPackage;
+    }
+
+    /**
+     * Marca de tiempo del evento que trajo al primer plano la app actual
+     */
+    public long getLastSwitchTimestamp() {
+        return lastSwitchTimestamp;
+    }
+
+    public LockSessionTracker getSessionTracker() {
+        return sessionTracker;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSwitches() {
+        return switches;
+    }
+
+    public long getLocksShown() {
+        return locksShown;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.lockmeow;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Buffer circular de los últimos eventos de detección. Guarda los datos en arreglos
+ * preasignados, así registrar un evento no crea objetos en el ciclo de detección
+ */
+public class DetectionEventLog {
+    public static final byte SWITCH = 1;
+    public static final byte LOCK = 2;
+    public static final byte HIDE = 3;
+    public static final byte GRACE = 4;
+
+    private final long[] timestamps;
+    private final String[] packages;
+    private final byte[] types;
+    private int next;
+    private int size;
+
+    public DetectionEventLog(int capacity) {
+        timestamps = new long[capacity];
+        packages = new String[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Registra un evento, sobrescribiendo el más antiguo si el buffer está lleno
+     */
+    public synchronized void record(byte type, String packageName, long timestamp) {
+        timestamps[next] = timestamp;
+        packages[next] = packageName;
+        types[next] = type;
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Escribe los eventos del más antiguo al más reciente
+     */
+    public synchronized void dump(Writer writer) throws IOException {
+        int start = (next - size + timestamps.length) % timestamps.length;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % timestamps.length;
+            writer.write(timestamps[index] + " " + typeName(types[index]) + " " + packages[index] + "\n");
+        }
+    }
+
+    private static String typeName(byte type) {
+        switch (type) {
+            case SWITCH:
+                return "SWITCH";
+            case LOCK:
+                return "LOCK";
+            case HIDE:
+                return "HIDE";
+            case GRACE:
+                return "GRACE";
+            default:
+                return "?";
+        }
+    }
+}
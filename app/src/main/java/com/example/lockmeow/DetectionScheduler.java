@@ -0,0 +1,107 @@
+package com.example.lockmeow;
+
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planificador dueño del ciclo de detección: garantiza que solo exista un ciclo
+ * de sondeo activo por proceso y fusiona los reinicios repetidos del servicio
+ */
+public class DetectionScheduler {
+    private final Handler handler;
+    private final Runnable task;
+    private final AdaptivePollingPolicy policy;
+
+    private final AtomicLong ticksExecuted = new AtomicLong();
+    private final AtomicLong ticksSkipped = new AtomicLong();
+    private final AtomicLong restartsCoalesced = new AtomicLong();
+
+    // Cada arranque abre una nueva generación; los ciclos de generaciones viejas se descartan
+    private int generation;
+    private boolean running;
+
+    public DetectionScheduler(Handler handler, AdaptivePollingPolicy policy, Runnable task) {
+        this.handler = handler;
+        this.policy = policy;
+        this.task = task;
+    }
+
+    /**
+     * Inicia el ciclo de detección; si ya está en marcha la llamada se fusiona
+     */
+    public synchronized boolean start() {
+        if (running) {
+            restartsCoalesced.incrementAndGet();
+            return false;
+        }
+        running = true;
+        generation++;
+        handler.post(new Tick(generation));
+        return true;
+    }
+
+    /**
+     * Detiene el ciclo; los ciclos ya encolados se descartan al ejecutarse
+     */
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            generation++;
+        }
+    }
+
+    /**
+     * Adelanta el siguiente ciclo para que ocurra de inmediato, si el ciclo está activo
+     */
+    public synchronized void poke() {
+        if (running) {
+            generation++;
+            handler.post(new Tick(generation));
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private synchronized boolean isCurrent(int tickGeneration) {
+        return running && tickGeneration == generation;
+    }
+
+    public long getTicksExecuted() {
+        return ticksExecuted.get();
+    }
+
+    public long getTicksSkipped() {
+        return ticksSkipped.get();
+    }
+
+    public long getRestartsCoalesced() {
+        return restartsCoalesced.get();
+    }
+
+    /**
+     * Ciclo que se reprograma a sí mismo mientras su generación siga vigente
+     */
+    private class Tick implements Runnable {
+        private final int tickGeneration;
+
+        Tick(int tickGeneration) {
+            this.tickGeneration = tickGeneration;
+        }
+
+        @Override
+        public void run() {
+            if (!isCurrent(tickGeneration)) {
+                ticksSkipped.incrementAndGet();
+                return;
+            }
+            ticksExecuted.incrementAndGet();
+            task.run();
+            if (isCurrent(tickGeneration)) {
+                handler.postDelayed(this, policy.nextDelay());
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.lockmeow;
+
+/**
+ * Fuente que indica qué aplicación está en primer plano. Permite cambiar el mecanismo
+ * de detección (UsageEvents, UsageStats, RunningTasks o trazas sintéticas)
+ */
+public interface ForegroundAppSource {
+
+    /**
+     * Retorna el paquete en primer plano en el instante now, o null si aún no se conoce
+     */
+    String poll(long now);
+
+    /**
+     * Retorna la marca de tiempo del último cambio a primer plano observado
+     */
+    long getLastSwitchTimestamp();
+}
@@ -0,0 +1,64 @@
+package com.example.lockmeow;
+
+import android.app.Activity;
+import android.app.KeyguardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.widget.Toast;
+
+/**
+ * Pide la credencial del dispositivo antes de conceder el periodo de gracia. Es una
+ * actividad transparente y estándar: blockActivity es singleInstance y no puede recibir
+ * el resultado de la pantalla de credencial, que se lanzaría en otra tarea
+ */
+public class GraceConfirmActivity extends Activity {
+    private static final String EXTRA_PACKAGE = "blockedAppPackage";
+    private static final int REQUEST_CREDENTIAL = 1;
+
+    /**
+     * Lanza la confirmación para el paquete bloqueado; se puede llamar desde el servicio
+     */
+    public static void start(Context context, String packageName) {
+        Intent intent = new Intent(context, GraceConfirmActivity.class);
+        intent.putExtra(EXTRA_PACKAGE, packageName);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        context.startActivity(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            // La pantalla de credencial ya se lanzó; su resultado llega a onActivityResult
+            return;
+        }
+        KeyguardManager keyguard = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
+        if (keyguard == null || !keyguard.isDeviceSecure()) {
+            // Sin bloqueo de pantalla no hay credencial que pedir, y la gracia no se concede sin ella
+            Toast.makeText(this, "Configura un bloqueo de pantalla para usar el tiempo de gracia",
+                    Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        Intent confirm = keyguard.createConfirmDeviceCredentialIntent("Tiempo de gracia",
+                "Confirma tu identidad para usar la app bloqueada");
+        if (confirm == null) {
+            finish();
+            return;
+        }
+        startActivityForResult(confirm, REQUEST_CREDENTIAL);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_CREDENTIAL && resultCode == RESULT_OK) {
+            String packageName = getIntent().getStringExtra(EXTRA_PACKAGE);
+            if (packageName != null) {
+                ApplockService.requestGrace(this, packageName);
+            }
+        }
+        finish();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Caché de iconos en dos niveles. En memoria, un LruCache limitado por bytes; en disco,
+ * un PNG por paquete ya reducido al tamaño de la fila de la lista. Así el heap ocupado
+ * por los iconos no depende de cuántas apps haya instaladas
+ */
+public class IconCache {
+    private static final String TAG = "IconCache";
+    private static final String ICON_DIR = "app_icons";
+    // Tamaño de appIcon en app_adapter_design.xml
+    private static final int ROW_ICON_DP = 50;
+    // Fracción del heap de la app que pueden ocupar los iconos en memoria
+    private static final int MEMORY_FRACTION = 16;
+    private static final int DECODE_THREADS = 2;
+    private static IconCache instance;
+
+    /**
+     * Recibe en el hilo principal el icono pedido con request(); bitmap es null si no hay icono guardado
+     */
+    public interface Callback {
+        void onIconLoaded(IconHandle handle, Bitmap bitmap);
+    }
+
+    /**
+     * Petición en curso. Cancelarla evita la decodificación si aún no empezó y, si ya
+     * empezó, descarta el resultado
+     */
+    public static final class Request {
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private final File dir;
+    private final int sizePx;
+    private final LruCache<String, Bitmap> memory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService decoder = Executors.newFixedThreadPool(DECODE_THREADS, runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, TAG));
+
+    private IconCache(Context context) {
+        this.dir = new File(context.getFilesDir(), ICON_DIR);
+        this.sizePx = Math.round(ROW_ICON_DP * context.getResources().getDisplayMetrics().density);
+        int budget = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+        this.memory = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized IconCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new IconCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna el icono solo si está en memoria; se puede llamar desde el hilo principal
+     */
+    public Bitmap peek(IconHandle handle) {
+        return memory.get(handle.getPackageName());
+    }
+
+    /**
+     * Retorna el icono desde memoria o lo decodifica del disco; null si aún no se guardó.
+     * Puede leer el disco, así que no se llama desde el hilo principal
+     */
+    public Bitmap load(IconHandle handle) {
+        String packageName = handle.getPackageName();
+        Bitmap bitmap = memory.get(packageName);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = decode(file(packageName));
+        if (bitmap != null) {
+            memory.put(packageName, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Pide el icono fuera del hilo principal. Se llama desde el hilo principal, igual que
+     * cancel(), así la petición queda registrada antes de que alguien pueda cancelarla
+     */
+    public Request request(IconHandle handle, Callback callback) {
+        Request request = new Request();
+        request.future = decoder.submit(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            Bitmap bitmap = load(handle);
+            mainHandler.post(() -> {
+                if (!request.cancelled) {
+                    callback.onIconLoaded(handle, bitmap);
+                }
+            });
+        });
+        return request;
+    }
+
+    /**
+     * Reduce el icono al tamaño de la fila, lo guarda en disco y lo deja en memoria
+     */
+    public void put(String packageName, Drawable icon) {
+        if (icon == null) {
+            return;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        icon.setBounds(0, 0, sizePx, sizePx);
+        icon.draw(canvas);
+        memory.put(packageName, bitmap);
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File target = file(packageName);
+        File tmp = null;
+        try {
+            // Temporal propio: el servicio y la lista pueden guardar el mismo icono a la vez
+            tmp = File.createTempFile(packageName, ".tmp", dir);
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo guardar el icono de " + packageName, e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+            return;
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+        }
+    }
+
+    public boolean isOnDisk(String packageName) {
+        return file(packageName).exists();
+    }
+
+    public void remove(String packageName) {
+        memory.remove(packageName);
+        file(packageName).delete();
+    }
+
+    /**
+     * Decodifica con inSampleSize para no crear un bitmap más grande que la fila
+     */
+    private Bitmap decode(File source) {
+        if (!source.exists()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), options);
+        int sample = 1;
+        while (options.outWidth / (sample * 2) >= sizePx && options.outHeight / (sample * 2) >= sizePx) {
+            sample *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        return BitmapFactory.decodeFile(source.getPath(), options);
+    }
+
+    private File file(String packageName) {
+        return new File(dir, packageName + ".png");
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.lockmeow;
+
+/**
+ * Referencia liviana al icono de una app. No retiene el bitmap: IconCache lo resuelve
+ * desde memoria o disco cuando una fila lo necesita
+ */
+public final class IconHandle {
+    private final String packageName;
+
+    public IconHandle(String packageName) {
+        this.packageName = packageName;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IconHandle && packageName.equals(((IconHandle) other).packageName);
+    }
+
+    @Override
+    public int hashCode() {
+        return packageName.hashCode();
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Diario de solo anexado con los bloqueos y desbloqueos. Cada cambio es una línea
+ * "seq\ttimestamp\tL|U\tpaquete[\tgrupo]"; los cambios masivos comparten grupo.
+ * Las líneas se escriben por lotes en un hilo propio con un único fsync por lote.
+ * Al crecer, el diario se pliega en la instantánea guardada en las preferencias y
+ * solo se conserva la cola reciente como historial. Los registros conservados también
+ * viven en memoria: las lecturas no tocan el disco y la escritura ocurre fuera del
+ * monitor, así append() nunca espera a un fsync
+ */
+public class LockJournal {
+    private static final String TAG = "LockJournal";
+    private static final String FILE_NAME = "lock_journal.log";
+    // Último número de secuencia incluido en la instantánea de SharedPreferencies
+    private static final String KEY_SNAPSHOT_SEQ = "lockedAppsSeq";
+    // Ventana en la que se agrupan los cambios antes de escribirlos a disco
+    private static final long FLUSH_DELAY_MS = 250;
+    // Tope de la espera entre reintentos cuando la escritura falla
+    private static final long FLUSH_RETRY_MAX_MS = 60 * 1000;
+    // Registros que se conservan tras compactar, como historial de acciones
+    private static final int HISTORY_KEEP = 256;
+    private static final int COMPACT_THRESHOLD = HISTORY_KEEP * 2;
+    private static LockJournal instance;
+
+    /**
+     * Recibe los cambios del diario posteriores a una secuencia dada
+     */
+    public interface Listener {
+        void onLockChanged(Record record);
+    }
+
+    /**
+     * Un cambio de estado de un paquete
+     */
+    public static final class Record {
+        private final long seq;
+        private final long timestamp;
+        private final String packageName;
+        private final boolean locked;
+        // Secuencia del primer registro del cambio masivo, o 0 si el cambio es individual
+        private final long group;
+
+        Record(long seq, long timestamp, String packageName, boolean locked, long group) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.packageName = packageName;
+            this.locked = locked;
+            this.group = group;
+        }
+
+        public long getSeq() { return seq; }
+        public long getTimestamp() { return timestamp; }
+        public String getPackageName() { return packageName; }
+        public boolean isLocked() { return locked; }
+        public long getGroup() { return group; }
+
+        String encode() {
+            String line = seq + "\t" + timestamp + "\t" + (locked ? 'L' : 'U') + "\t" + packageName;
+            return group != 0 ? line + "\t" + group + "\n" : line + "\n";
+        }
+
+        /**
+         * Decodifica una línea; retorna null si está incompleta (p. ej. escritura cortada)
+         */
+        static Record decode(String line) {
+            String[] parts = line.split("\t");
+            if (parts.length < 4 || parts.length > 5 || parts[3].isEmpty()) {
+                return null;
+            }
+            try {
+                return new Record(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[3],
+                        "L".equals(parts[2]), parts.length == 5 ? Long.parseLong(parts[4]) : 0);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final File file;
+    private final SharedPreferences pref;
+    private final Handler handler;
+    // Registros del archivo más los pendientes, en orden de secuencia. El estado del diario
+    // se protege con el monitor de la instancia
+    private final List<Record> records = new ArrayList<>();
+    // Cambios aún no escritos
+    private final List<Record> pending = new ArrayList<>();
+    // Solo se usa en el hilo del diario, que es el único que escribe el archivo
+    private FileOutputStream out;
+    private long lastSeq;
+    // Última secuencia ya sincronizada con fsync
+    private long flushedSeq;
+    private int recordsInFile;
+    private boolean flushScheduled;
+    private long retryDelayMs = FLUSH_DELAY_MS;
+    // Se abre cuando el hilo del diario termina de leer el archivo y la instantánea
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    private LockJournal(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.pref = context.getSharedPreferences(SharedPreferencies.SHARED_APP_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        // getInstance() suele llamarse desde el hilo principal: la lectura se hace en el del diario
+        handler.post(this::loadFile);
+    }
+
+    private void loadFile() {
+        long seq = pref.getLong(KEY_SNAPSHOT_SEQ, 0);
+        List<Record> read = readFile();
+        synchronized (this) {
+            for (Record record : read) {
+                // Un lote reintentado tras un fallo de escritura puede haber dejado líneas repetidas
+                if (records.isEmpty() || record.seq > records.get(records.size() - 1).seq) {
+                    records.add(record);
+                }
+                seq = Math.max(seq, record.seq);
+                recordsInFile++;
+            }
+            lastSeq = seq;
+            flushedSeq = seq;
+        }
+        loaded.countDown();
+    }
+
+    /**
+     * Espera a que el hilo del diario termine la carga inicial. Se llama antes de tomar el
+     * monitor, que la carga necesita para publicar lo leído
+     */
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                loaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static synchronized LockJournal getInstance(Context context) {
+        if (instance == null) {
+            instance = new LockJournal(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Anota un cambio y retorna su secuencia; la escritura ocurre en el hilo del diario
+     */
+    public long append(String packageName, boolean locked) {
+        awaitLoaded();
+        synchronized (this) {
+            lastSeq++;
+            add(new Record(lastSeq, System.currentTimeMillis(), packageName, locked, 0));
+            scheduleFlush();
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Anota un cambio masivo como un solo grupo, que se escribe en el mismo lote, y
+     * retorna la secuencia de su último registro
+     */
+    public long appendBatch(Collection<String> locked, Collection<String> unlocked) {
+        awaitLoaded();
+        synchronized (this) {
+            if (locked.isEmpty() && unlocked.isEmpty()) {
+                return lastSeq;
+            }
+            long now = System.currentTimeMillis();
+            long group = lastSeq + 1;
+            for (String packageName : unlocked) {
+                lastSeq++;
+                add(new Record(lastSeq, now, packageName, false, group));
+            }
+            for (String packageName : locked) {
+                lastSeq++;
+                add(new Record(lastSeq, now, packageName, true, group));
+            }
+            scheduleFlush();
+            return lastSeq;
+        }
+    }
+
+    private void add(Record record) {
+        pending.add(record);
+        records.add(record);
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(this::flush, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Reconstruye el conjunto de paquetes bloqueados: instantánea más los cambios posteriores.
+     * Retorna la secuencia que incluye el conjunto
+     */
+    public long load(Collection<String> out) {
+        awaitLoaded();
+        synchronized (this) {
+            out.clear();
+            // La secuencia se lee antes que el conjunto: si una compactación se cuela entre ambas
+            // lecturas se reaplican registros ya plegados, que es inocuo, y no se pierde ninguno
+            long snapshotSeq = pref.getLong(KEY_SNAPSHOT_SEQ, 0);
+            SharedPreferencies.decodeApps(pref.getString(SharedPreferencies.KEY_LOCKED_APPS, ""), out);
+            for (Record record : records) {
+                if (record.seq > snapshotSeq) {
+                    apply(record, out);
+                }
+            }
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Entrega los cambios con secuencia mayor que afterSeq y retorna la última secuencia.
+     * Si la compactación ya descartó parte de ellos retorna -1 y hay que recargar con load().
+     * El listener se llama fuera del monitor: puede tomar otros monitores (p. ej. el de
+     * SharedPreferencies, que a su vez llama a append()) sin riesgo de interbloqueo
+     */
+    public long tail(long afterSeq, Listener listener) {
+        awaitLoaded();
+        List<Record> newer = new ArrayList<>();
+        long seq;
+        synchronized (this) {
+            seq = lastSeq;
+            if (afterSeq >= seq) {
+                return seq;
+            }
+            long firstSeq = records.isEmpty() ? seq + 1 : records.get(0).seq;
+            if (firstSeq > afterSeq + 1) {
+                return -1;
+            }
+            for (Record record : records) {
+                if (record.seq > afterSeq) {
+                    newer.add(record);
+                }
+            }
+        }
+        for (Record record : newer) {
+            listener.onLockChanged(record);
+        }
+        return seq;
+    }
+
+    /**
+     * Retorna los cambios conservados, del más antiguo al más reciente
+     */
+    public List<Record> history() {
+        awaitLoaded();
+        synchronized (this) {
+            return new ArrayList<>(records);
+        }
+    }
+
+    public long getLastSeq() {
+        awaitLoaded();
+        synchronized (this) {
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Última secuencia que ya está en disco; lo que se persista fuera del diario no debe
+     * declarar una secuencia mayor, o tras una caída quedaría por delante del diario
+     */
+    public long getFlushedSeq() {
+        awaitLoaded();
+        synchronized (this) {
+            return flushedSeq;
+        }
+    }
+
+    /**
+     * Escribe el lote pendiente con un solo fsync y compacta si el diario creció demasiado.
+     * Solo se toma el monitor para sacar el lote y para anotar el resultado
+     */
+    private void flush() {
+        List<Record> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            FileOutputStream stream = openStream();
+            StringBuilder builder = new StringBuilder();
+            for (Record record : batch) {
+                builder.append(record.encode());
+            }
+            stream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        } catch (IOException e) {
+            // El lote vuelve a quedar pendiente y se reintenta, junto con lo que se anote
+            // mientras tanto, con una espera que se duplica en cada fallo
+            Log.e(TAG, "No se pudo escribir el diario de bloqueos", e);
+            closeStream();
+            long delay;
+            synchronized (this) {
+                pending.addAll(0, batch);
+                flushScheduled = true;
+                delay = retryDelayMs;
+                retryDelayMs = Math.min(retryDelayMs * 2, FLUSH_RETRY_MAX_MS);
+            }
+            handler.postDelayed(this::flush, delay);
+            return;
+        }
+        boolean compact;
+        synchronized (this) {
+            retryDelayMs = FLUSH_DELAY_MS;
+            flushedSeq = Math.max(flushedSeq, batch.get(batch.size() - 1).seq);
+            recordsInFile += batch.size();
+            compact = recordsInFile >= COMPACT_THRESHOLD;
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * Pliega el diario en la instantánea y reescribe el archivo con la cola reciente.
+     * La instantánea se guarda primero: si el proceso muere a medias, load() ignora los
+     * registros ya plegados gracias a su número de secuencia. Se ejecuta en el hilo del
+     * diario, así nadie más escribe el archivo mientras se reescribe fuera del monitor
+     */
+    private void compact() {
+        List<Record> written;
+        synchronized (this) {
+            written = new ArrayList<>(records.subList(0, records.size() - pending.size()));
+        }
+        Set<String> locked = new LinkedHashSet<>();
+        SharedPreferencies.decodeApps(pref.getString(SharedPreferencies.KEY_LOCKED_APPS, ""), locked);
+        long folded = pref.getLong(KEY_SNAPSHOT_SEQ, 0);
+        for (Record record : written) {
+            if (record.seq > folded) {
+                apply(record, locked);
+                folded = record.seq;
+            }
+        }
+        if (!pref.edit()
+                .putString(SharedPreferencies.KEY_LOCKED_APPS, SharedPreferencies.encodeApps(locked))
+                .putLong(KEY_SNAPSHOT_SEQ, folded)
+                .commit()) {
+            Log.w(TAG, "No se pudo guardar la instantánea de bloqueos");
+            return;
+        }
+        List<Record> keep = written.subList(Math.max(0, written.size() - HISTORY_KEEP), written.size());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            StringBuilder builder = new StringBuilder();
+            for (Record record : keep) {
+                builder.append(record.encode());
+            }
+            stream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo compactar el diario de bloqueos", e);
+            return;
+        }
+        closeStream();
+        if (!tmp.renameTo(file)) {
+            return;
+        }
+        synchronized (this) {
+            recordsInFile = keep.size();
+            // Lo anotado mientras tanto sigue pendiente detrás de la cola conservada
+            records.subList(0, written.size() - keep.size()).clear();
+        }
+    }
+
+    private static void apply(Record record, Collection<String> locked) {
+        if (record.locked) {
+            locked.add(record.packageName);
+        } else {
+            locked.remove(record.packageName);
+        }
+    }
+
+    private List<Record> readFile() {
+        List<Record> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record = Record.decode(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el diario de bloqueos", e);
+        }
+        return records;
+    }
+
+    private FileOutputStream openStream() throws IOException {
+        if (out == null) {
+            boolean tornTail = endsWithoutNewline();
+            out = new FileOutputStream(file, true);
+            if (tornTail) {
+                // Se cierra la línea cortada para que el siguiente registro no se pegue a ella
+                out.write('\n');
+            }
+        }
+        return out;
+    }
+
+    private boolean endsWithoutNewline() throws IOException {
+        if (file.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() != '\n';
+        }
+    }
+
+    private void closeStream() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // El descriptor se descarta de todos modos
+            }
+            out = null;
+        }
+    }
+}
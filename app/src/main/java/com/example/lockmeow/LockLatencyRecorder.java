@@ -0,0 +1,74 @@
+package com.example.lockmeow;
+
+import com.example.lockmeow.datastructures.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Mide cuánto tiempo queda visible una app bloqueada: desde el evento de primer plano
+ * hasta que se lanza el bloqueo y hasta que la pantalla de bloqueo termina de crearse
+ */
+public class LockLatencyRecorder {
+    public static final String EXTRA_DETECTED_AT = "detectedAt";
+    private static LockLatencyRecorder instance;
+
+    private final LatencyHistogram switchToLocker = new LatencyHistogram();
+    private final LatencyHistogram switchToCovered = new LatencyHistogram();
+
+    private LockLatencyRecorder() {
+    }
+
+    public static synchronized LockLatencyRecorder getInstance() {
+        if (instance == null) {
+            instance = new LockLatencyRecorder();
+        }
+        return instance;
+    }
+
+    /**
+     * Registra el momento en que el servicio lanza el bloqueo
+     */
+    public void recordLockerIssued(long switchTimestamp, long now) {
+        if (switchTimestamp > 0) {
+            switchToLocker.record(now - switchTimestamp);
+        }
+    }
+
+    /**
+     * Registra el momento en que la pantalla de bloqueo ya cubre la app
+     */
+    public void recordCovered(long switchTimestamp, long now) {
+        if (switchTimestamp > 0) {
+            switchToCovered.record(now - switchTimestamp);
+        }
+    }
+
+    public LatencyHistogram getSwitchToLocker() {
+        return switchToLocker;
+    }
+
+    public LatencyHistogram getSwitchToCovered() {
+        return switchToCovered;
+    }
+
+    /**
+     * Retorna un resumen con los percentiles p50/p95/p99 de ambas latencias
+     */
+    public String getSummary() {
+        return "Cambio -> bloqueo lanzado: " + switchToLocker
+                + "\nCambio -> app cubierta: " + switchToCovered;
+    }
+
+    /**
+     * Escribe el resumen en un archivo de texto
+     */
+    public void dumpTo(File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(getSummary());
+            writer.write("\n");
+        }
+    }
+}
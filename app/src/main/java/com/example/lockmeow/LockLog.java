@@ -0,0 +1,90 @@
+package com.example.lockmeow;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Registro del servicio de bloqueo. VERBOSE es una constante de compilación: en release
+ * vale false y los bloques {@code if (LockLog.VERBOSE)} desaparecen del bytecode junto
+ * con la concatenación de sus mensajes
+ */
+public final class LockLog {
+    public static final boolean VERBOSE = BuildConfig.DETECTION_LOGS;
+    private static final int EVENT_CAPACITY = 256;
+    private static final DetectionEventLog events = new DetectionEventLog(EVENT_CAPACITY);
+
+    private LockLog() {
+    }
+
+    public static void d(String tag, String message) {
+        if (VERBOSE) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        Log.w(tag, message, error);
+    }
+
+    /**
+     * Eventos recientes de detección, disponibles también en release
+     */
+    public static DetectionEventLog events() {
+        return events;
+    }
+
+    /**
+     * Escribe los eventos recientes en un archivo de texto
+     */
+    public static void dumpEvents(File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            events.dump(writer);
+        }
+    }
+
+    /**
+     * Añade al mensaje cuántos se omitieron desde el último que dejó pasar el muestreador
+     */
+    public static String withSuppressed(String message, Sampler sampler) {
+        long suppressed = sampler.takeSuppressed();
+        return suppressed == 0 ? message : message + " (" + suppressed + " omitidos)";
+    }
+
+    /**
+     * Limita un mensaje repetitivo a una vez por intervalo
+     */
+    public static final class Sampler {
+        private final long intervalMs;
+        private long lastLogged = Long.MIN_VALUE;
+        private long suppressed;
+
+        public Sampler(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        /**
+         * Retorna true si el mensaje debe escribirse ahora
+         */
+        public synchronized boolean sample(long now) {
+            if (lastLogged != Long.MIN_VALUE && now - lastLogged < intervalMs) {
+                suppressed++;
+                return false;
+            }
+            lastLogged = now;
+            return true;
+        }
+
+        /**
+         * Retorna y reinicia la cantidad de mensajes omitidos desde la última escritura
+         */
+        public synchronized long takeSuppressed() {
+            long count = suppressed;
+            suppressed = 0;
+            return count;
+        }
+    }
+}
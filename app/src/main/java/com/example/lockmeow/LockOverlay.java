@@ -0,0 +1,156 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.PixelFormat;
+import android.provider.Settings;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.widget.Button;
+import android.widget.TextView;
+
+/**
+ * Superposición de bloqueo pre-inflada: la vista se añade una sola vez al WindowManager
+ * y para bloquear solo se cambia su visibilidad y su contenido. Debe usarse en el hilo principal
+ */
+public class LockOverlay {
+    private static final String TAG = "LockOverlay";
+
+    /**
+     * Recibe la petición del usuario de usar la app bloqueada durante el periodo de gracia;
+     * quien la recibe debe pedir la credencial antes de concederlo
+     */
+    public interface GraceListener {
+        void onGraceRequested(String packageName);
+    }
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final WindowManager.LayoutParams params;
+    private final View root;
+    private final TextView appName;
+    private final Button graceButton;
+    private boolean attached;
+    private String shownPackage;
+    // Cambio de app cuya cobertura aún no se dibujó; 0 si no hay ninguno pendiente
+    private long pendingSwitchTimestamp;
+    // La latencia se cierra cuando la superposición se dibuja de verdad, no al encolar un post
+    private final ViewTreeObserver.OnDrawListener coveredListener = this::onOverlayDrawn;
+
+    public LockOverlay(Context context, GraceListener graceListener) {
+        this.context = context;
+        this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        this.root = LayoutInflater.from(context).inflate(R.layout.overlay_lock, null);
+        this.appName = root.findViewById(R.id.overlayAppName);
+        this.graceButton = root.findViewById(R.id.overlayGrace);
+        graceButton.setOnClickListener(v -> {
+            if (shownPackage != null) {
+                graceListener.onGraceRequested(shownPackage);
+            }
+        });
+        this.params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                        | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+                PixelFormat.TRANSLUCENT
+        );
+    }
+
+    /**
+     * Añade la vista oculta a la ventana si ya se concedió el permiso de superposición
+     */
+    public boolean attach() {
+        if (attached) {
+            return true;
+        }
+        if (!Settings.canDrawOverlays(context)) {
+            return false;
+        }
+        try {
+            windowManager.addView(root, params);
+            // Cada ventana nueva trae su propio ViewTreeObserver
+            root.getViewTreeObserver().addOnDrawListener(coveredListener);
+            attached = true;
+        } catch (RuntimeException e) {
+            LockLog.w(TAG, "No se pudo añadir la superposición", e);
+        }
+        return attached;
+    }
+
+    /**
+     * Cubre la app bloqueada; retorna false si la superposición no está disponible
+     */
+    public boolean show(String packageName, long switchTimestamp) {
+        if (!attach()) {
+            return false;
+        }
+        if (!packageName.equals(shownPackage)) {
+            appName.setText(loadLabel(packageName));
+        }
+        shownPackage = packageName;
+        graceButton.setText("Dame " + SharedPreferencies.getInstance(context).getMinutosGracia() + " minutos");
+        setTouchable(true);
+        root.setVisibility(View.VISIBLE);
+        pendingSwitchTimestamp = switchTimestamp;
+        root.invalidate();
+        return true;
+    }
+
+    private void onOverlayDrawn() {
+        if (pendingSwitchTimestamp != 0 && root.getVisibility() == View.VISIBLE) {
+            LockLatencyRecorder.getInstance().recordCovered(pendingSwitchTimestamp, System.currentTimeMillis());
+            pendingSwitchTimestamp = 0;
+        }
+    }
+
+    /**
+     * Oculta la superposición sin quitarla de la ventana
+     */
+    public void hide() {
+        pendingSwitchTimestamp = 0;
+        if (attached && root.getVisibility() != View.GONE) {
+            root.setVisibility(View.GONE);
+            setTouchable(false);
+        }
+    }
+
+    /**
+     * Quita la vista de la ventana; se llama al destruir el servicio
+     */
+    public void detach() {
+        if (attached) {
+            windowManager.removeViewImmediate(root);
+            attached = false;
+        }
+    }
+
+    private void setTouchable(boolean touchable) {
+        int flags = touchable
+                ? params.flags & ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                : params.flags | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        if (flags != params.flags) {
+            params.flags = flags;
+            windowManager.updateViewLayout(root, params);
+        }
+    }
+
+    private CharSequence loadLabel(String packageName) {
+        // El nombre sale del catálogo compartido; el PackageManager solo si aún no está
+        AppCatalogCache.Entry entry = AppCatalogCache.getInstance(context).peekCatalog().get(packageName);
+        if (entry != null) {
+            return entry.getLabel();
+        }
+        PackageManager packageManager = context.getPackageManager();
+        try {
+            ApplicationInfo info = packageManager.getApplicationInfo(packageName, 0);
+            return packageManager.getApplicationLabel(info);
+        } catch (PackageManager.NameNotFoundException e) {
+            return packageName;
+        }
+    }
+}
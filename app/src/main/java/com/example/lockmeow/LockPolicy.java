@@ -0,0 +1,240 @@
+package com.example.lockmeow;
+
+import com.example.lockmeow.datastructures.IntervalIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Instantánea inmutable de la política de bloqueo. Cada cambio produce una copia
+ * nueva, así el servicio puede consultarla sin sincronización
+ */
+public final class LockPolicy implements LockRules {
+    public static final LockPolicy EMPTY = new LockPolicy(Collections.<String>emptySet(),
+            Collections.<LockSchedule>emptyList(), Collections.<String, IntervalIndex>emptyMap(),
+            Collections.<String, Long>emptyMap(), 0, 0);
+
+    private final Set<String> lockedPackages;
+    private final List<LockSchedule> schedules;
+    // Franjas de cada paquete compiladas en minutos de la semana
+    private final Map<String, IntervalIndex> scheduleIndex;
+    // Cuota diaria de uso por paquete, en milisegundos
+    private final Map<String, Long> quotas;
+    // Último registro de LockJournal incluido en la lista de bloqueados
+    private final long journalSeq;
+    // Versión de las reglas por horario y las cuotas guardadas en las preferencias
+    private final int rulesVersion;
+
+    private LockPolicy(Set<String> lockedPackages, List<LockSchedule> schedules,
+                       Map<String, IntervalIndex> scheduleIndex, Map<String, Long> quotas,
+                       long journalSeq, int rulesVersion) {
+        this.lockedPackages = lockedPackages;
+        this.schedules = schedules;
+        this.scheduleIndex = scheduleIndex;
+        this.quotas = quotas;
+        this.journalSeq = journalSeq;
+        this.rulesVersion = rulesVersion;
+    }
+
+    /**
+     * Crea una política a partir de la lista de paquetes bloqueados
+     */
+    public static LockPolicy of(Collection<String> packages) {
+        return of(packages, Collections.<LockSchedule>emptyList());
+    }
+
+    /**
+     * Crea una política con paquetes siempre bloqueados y reglas por horario
+     */
+    public static LockPolicy of(Collection<String> packages, List<LockSchedule> schedules) {
+        return of(packages, schedules, Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * Crea una política completa: bloqueo permanente, reglas por horario y cuotas diarias
+     */
+    public static LockPolicy of(Collection<String> packages, List<LockSchedule> schedules,
+                                Map<String, Long> quotas) {
+        if (packages.isEmpty() && schedules.isEmpty() && quotas.isEmpty()) {
+            return EMPTY;
+        }
+        return new LockPolicy(Collections.unmodifiableSet(new HashSet<>(packages)),
+                Collections.unmodifiableList(new ArrayList<>(schedules)), compile(schedules),
+                Collections.unmodifiableMap(new HashMap<>(quotas)), 0, 0);
+    }
+
+    /**
+     * Agrupa las reglas por paquete y las compila en un índice de intervalos
+     */
+    private static Map<String, IntervalIndex> compile(List<LockSchedule> schedules) {
+        Map<String, List<int[]>> intervals = new HashMap<>();
+        for (LockSchedule schedule : schedules) {
+            List<int[]> list = intervals.get(schedule.getPackageName());
+            if (list == null) {
+                list = new ArrayList<>();
+                intervals.put(schedule.getPackageName(), list);
+            }
+            schedule.addIntervals(list);
+        }
+        Map<String, IntervalIndex> index = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> entry : intervals.entrySet()) {
+            IntervalIndex packageIndex = IntervalIndex.build(entry.getValue());
+            if (!packageIndex.isEmpty()) {
+                index.put(entry.getKey(), packageIndex);
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Verifica si un paquete está en la lista de bloqueo permanente
+     */
+    public boolean isLocked(String packageName) {
+        return lockedPackages.contains(packageName);
+    }
+
+    @Override
+    public boolean isLocked(String packageName, int minuteOfWeek) {
+        if (lockedPackages.contains(packageName)) {
+            return true;
+        }
+        IntervalIndex index = scheduleIndex.get(packageName);
+        return index != null && index.contains(minuteOfWeek);
+    }
+
+    /**
+     * Retorna una copia con el paquete bloqueado
+     */
+    public LockPolicy withLocked(String packageName) {
+        if (lockedPackages.contains(packageName)) {
+            return this;
+        }
+        Set<String> copy = new HashSet<>(lockedPackages);
+        copy.add(packageName);
+        return new LockPolicy(Collections.unmodifiableSet(copy), schedules, scheduleIndex, quotas,
+                journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con otra lista de paquetes bloqueados permanentemente
+     */
+    public LockPolicy withLockedPackages(Collection<String> packages) {
+        return new LockPolicy(Collections.unmodifiableSet(new HashSet<>(packages)), schedules, scheduleIndex, quotas,
+                journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con un cambio masivo aplicado: primero los desbloqueos y después
+     * los bloqueos, en el mismo orden en que LockJournal anota el grupo
+     */
+    public LockPolicy withChanges(Collection<String> locked, Collection<String> unlocked) {
+        Set<String> copy = new HashSet<>(lockedPackages);
+        boolean changed = copy.removeAll(unlocked);
+        changed |= copy.addAll(locked);
+        if (!changed) {
+            return this;
+        }
+        return new LockPolicy(Collections.unmodifiableSet(copy), schedules, scheduleIndex, quotas,
+                journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con el paquete desbloqueado
+     */
+    public LockPolicy withUnlocked(String packageName) {
+        if (!lockedPackages.contains(packageName)) {
+            return this;
+        }
+        Set<String> copy = new HashSet<>(lockedPackages);
+        copy.remove(packageName);
+        return new LockPolicy(Collections.unmodifiableSet(copy), schedules, scheduleIndex, quotas,
+                journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con las reglas por horario reemplazadas y recompiladas
+     */
+    public LockPolicy withSchedules(List<LockSchedule> newSchedules) {
+        return new LockPolicy(lockedPackages, Collections.unmodifiableList(new ArrayList<>(newSchedules)),
+                compile(newSchedules), quotas, journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con las cuotas diarias reemplazadas
+     */
+    public LockPolicy withQuotas(Map<String, Long> newQuotas) {
+        return new LockPolicy(lockedPackages, schedules, scheduleIndex,
+                Collections.unmodifiableMap(new HashMap<>(newQuotas)), journalSeq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia que declara incluir el diario hasta la secuencia dada; nunca retrocede
+     */
+    public LockPolicy withJournalSeq(long seq) {
+        if (seq <= journalSeq) {
+            return this;
+        }
+        return new LockPolicy(lockedPackages, schedules, scheduleIndex, quotas, seq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con la lista completa de bloqueados tal como la deja el diario hasta
+     * seq. A diferencia de withJournalSeq la secuencia puede retroceder: la lista viene del
+     * diario, que es la referencia
+     */
+    public LockPolicy rebasedOnJournal(Collection<String> packages, long seq) {
+        return new LockPolicy(Collections.unmodifiableSet(new HashSet<>(packages)), schedules, scheduleIndex, quotas,
+                seq, rulesVersion);
+    }
+
+    /**
+     * Retorna una copia con la versión de reglas y cuotas de la que proviene
+     */
+    public LockPolicy withRulesVersion(int version) {
+        return new LockPolicy(lockedPackages, schedules, scheduleIndex, quotas, journalSeq, version);
+    }
+
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    public int getRulesVersion() {
+        return rulesVersion;
+    }
+
+    @Override
+    public long getQuotaMillis(String packageName) {
+        Long quota = quotas.get(packageName);
+        return quota != null ? quota : 0;
+    }
+
+    public Map<String, Long> getQuotas() {
+        return quotas;
+    }
+
+    public Set<String> getLockedPackages() {
+        return lockedPackages;
+    }
+
+    public List<LockSchedule> getSchedules() {
+        return schedules;
+    }
+
+    /**
+     * Retorna las franjas compiladas de cada paquete con reglas por horario
+     */
+    public Map<String, IntervalIndex> getScheduleIndex() {
+        return scheduleIndex;
+    }
+
+    @Override
+    public int size() {
+        return lockedPackages.size();
+    }
+}
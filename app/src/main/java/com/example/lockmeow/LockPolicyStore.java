@@ -0,0 +1,217 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Publica la política de bloqueo vigente mediante una referencia atómica. La UI la
+ * actualiza al bloquear/desbloquear y el servicio la lee en cada ciclo sin bloqueos.
+ * Cada cambio se compila además en un archivo binario que el servicio mapea al arrancar
+ */
+public class LockPolicyStore {
+    private static final String TAG = "LockPolicyStore";
+    private static final String POLICY_FILE = "lock_policy.bin";
+    // Los cambios seguidos se agrupan en una sola escritura del archivo
+    private static final long WRITE_DELAY_MS = 100;
+    private static LockPolicyStore instance;
+
+    private final AtomicReference<LockRules> current = new AtomicReference<>();
+    private final Runnable writeTask = this::writePolicyFile;
+    private Context context;
+    private File policyFile;
+    private Handler writer;
+    private long loadedJournalSeq;
+
+    private LockPolicyStore() {
+    }
+
+    public static synchronized LockPolicyStore getInstance() {
+        if (instance == null) {
+            instance = new LockPolicyStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Carga la política si aún no se ha publicado ninguna: primero mapea el archivo
+     * compilado y solo si no existe, o quedó desactualizado, construye la política
+     * desde las preferencias. Validar el archivo no lee el diario ni las preferencias:
+     * los cambios del diario posteriores al archivo los aplica el servicio en su hilo
+     */
+    public LockRules load(Context context) {
+        LockRules rules = current.get();
+        if (rules != null) {
+            return rules;
+        }
+        synchronized (this) {
+            this.context = context.getApplicationContext();
+            this.policyFile = new File(this.context.getFilesDir(), POLICY_FILE);
+        }
+        MappedLockPolicy mapped = MappedLockPolicy.open(policyFile);
+        if (mapped != null && !isCurrent(mapped)) {
+            Log.w(TAG, "Archivo de la política desactualizado; se reconstruye");
+            mapped = null;
+        }
+        if (mapped != null) {
+            if (current.compareAndSet(null, mapped)) {
+                loadedJournalSeq = mapped.getJournalSeq();
+                Log.d(TAG, "Política de bloqueo mapeada: " + mapped.size() + " apps");
+            }
+            return current.get();
+        }
+        LockPolicy loaded = fromPreferences();
+        if (current.compareAndSet(null, loaded)) {
+            loadedJournalSeq = loaded.getJournalSeq();
+            Log.d(TAG, "Política de bloqueo cargada: " + loaded.size() + " apps");
+            scheduleWrite();
+        }
+        return current.get();
+    }
+
+    /**
+     * El archivo sirve si se compiló con la versión vigente de horarios y cuotas, que no
+     * pasan por el diario. La versión está en un archivo de preferencias de una sola clave
+     */
+    private boolean isCurrent(MappedLockPolicy mapped) {
+        return mapped.getRulesVersion() == SharedPreferencies.leerVersionReglas(context);
+    }
+
+    /**
+     * Secuencia de LockJournal incluida en la política cargada; los cambios posteriores
+     * hay que aplicarlos desde el diario
+     */
+    public long getLoadedJournalSeq() {
+        return loadedJournalSeq;
+    }
+
+    /**
+     * Retorna la política vigente, o una vacía si todavía no se ha cargado
+     */
+    public LockRules current() {
+        LockRules rules = current.get();
+        return rules != null ? rules : LockPolicy.EMPTY;
+    }
+
+    /**
+     * Publica el bloqueo de un paquete de forma incremental, junto con la secuencia del
+     * registro del diario que lo anotó
+     */
+    public void lock(String packageName, long journalSeq) {
+        update(policy -> policy.withLocked(packageName).withJournalSeq(journalSeq));
+    }
+
+    /**
+     * Publica el desbloqueo de un paquete de forma incremental
+     */
+    public void unlock(String packageName, long journalSeq) {
+        update(policy -> policy.withUnlocked(packageName).withJournalSeq(journalSeq));
+    }
+
+    /**
+     * Reemplaza la lista completa de paquetes bloqueados, que incluye el diario hasta
+     * journalSeq; la secuencia de la política pasa a ser exactamente esa
+     */
+    public void setLocked(Collection<String> packages, long journalSeq) {
+        update(policy -> policy.rebasedOnJournal(packages, journalSeq));
+    }
+
+    /**
+     * Publica de una vez los registros de un cambio masivo del diario, hasta journalSeq
+     */
+    public void applyBatch(Collection<String> locked, Collection<String> unlocked, long journalSeq) {
+        update(policy -> policy.withChanges(locked, unlocked).withJournalSeq(journalSeq));
+    }
+
+    /**
+     * Publica un nuevo conjunto de reglas por horario, ya compiladas
+     */
+    public void setSchedules(List<LockSchedule> schedules, int rulesVersion) {
+        update(policy -> policy.withSchedules(schedules).withRulesVersion(rulesVersion));
+    }
+
+    /**
+     * Publica un nuevo conjunto de cuotas diarias
+     */
+    public void setQuotas(Map<String, Long> quotas, int rulesVersion) {
+        update(policy -> policy.withQuotas(quotas).withRulesVersion(rulesVersion));
+    }
+
+    /**
+     * Sustituye la política mapeada por una editable construida desde las preferencias.
+     * El servicio la llama antes de reproducir el diario, fuera de cualquier monitor, para
+     * que los cambios posteriores no tengan que leer las preferencias
+     */
+    public void promote() {
+        LockRules rules = current.get();
+        if (rules == null || rules instanceof LockPolicy) {
+            return;
+        }
+        LockPolicy editable = fromPreferences();
+        if (current.compareAndSet(rules, editable)) {
+            Log.d(TAG, "Política de bloqueo editable: " + editable.size() + " apps");
+        }
+    }
+
+    /**
+     * Aplica un cambio a la política vigente. El archivo mapeado solo sirve para consultar:
+     * si sigue publicado se promueve una sola vez, antes del bucle, y el bucle solo reintenta
+     * el CAS sin volver a leer las preferencias
+     */
+    private void update(UnaryOperator<LockPolicy> change) {
+        promote();
+        while (true) {
+            LockRules rules = current.get();
+            if (!(rules instanceof LockPolicy)) {
+                return;
+            }
+            if (current.compareAndSet(rules, change.apply((LockPolicy) rules))) {
+                break;
+            }
+        }
+        scheduleWrite();
+    }
+
+    private LockPolicy fromPreferences() {
+        return SharedPreferencies.getInstance(context).leerPolitica();
+    }
+
+    private synchronized void scheduleWrite() {
+        if (writer == null) {
+            HandlerThread thread = new HandlerThread("LockPolicyWriter", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            writer = new Handler(thread.getLooper());
+        }
+        writer.removeCallbacks(writeTask);
+        writer.postDelayed(writeTask, WRITE_DELAY_MS);
+    }
+
+    /**
+     * Compila la política vigente en el archivo con la secuencia que viaja dentro de ella.
+     * Si el diario aún no sincronizó esa secuencia la escritura se aplaza: el archivo nunca
+     * debe adelantarse a lo que el diario tiene en disco
+     */
+    private void writePolicyFile() {
+        LockRules rules = current.get();
+        if (!(rules instanceof LockPolicy)) {
+            return;
+        }
+        LockPolicy policy = (LockPolicy) rules;
+        if (policy.getJournalSeq() > LockJournal.getInstance(context).getFlushedSeq()) {
+            scheduleWrite();
+            return;
+        }
+        if (!MappedLockPolicy.write(policyFile, policy)) {
+            Log.w(TAG, "No se pudo escribir el archivo de la política de bloqueo");
+        }
+    }
+}
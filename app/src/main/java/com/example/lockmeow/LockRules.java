@@ -0,0 +1,22 @@
+package com.example.lockmeow;
+
+/**
+ * Consultas que el motor de detección hace sobre la política de bloqueo, sin importar
+ * si viene de una instantánea en memoria o del archivo mapeado
+ */
+public interface LockRules {
+    /**
+     * Verifica si un paquete está bloqueado en el minuto de la semana indicado
+     */
+    boolean isLocked(String packageName, int minuteOfWeek);
+
+    /**
+     * Retorna la cuota diaria del paquete en milisegundos, o 0 si no tiene
+     */
+    long getQuotaMillis(String packageName);
+
+    /**
+     * Retorna cuántos paquetes están bloqueados permanentemente
+     */
+    int size();
+}
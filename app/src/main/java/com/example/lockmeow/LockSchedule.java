@@ -0,0 +1,145 @@
+package com.example.lockmeow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Regla de bloqueo por horario: bloquea un paquete los días indicados entre dos horas.
+ * Si la hora de fin es anterior a la de inicio, la franja cruza la medianoche
+ */
+public final class LockSchedule {
+    public static final int MONDAY = 1;
+    public static final int TUESDAY = 1 << 1;
+    public static final int WEDNESDAY = 1 << 2;
+    public static final int THURSDAY = 1 << 3;
+    public static final int FRIDAY = 1 << 4;
+    public static final int SATURDAY = 1 << 5;
+    public static final int SUNDAY = 1 << 6;
+    public static final int WEEKDAYS = MONDAY | TUESDAY | WEDNESDAY | THURSDAY | FRIDAY;
+    public static final int EVERY_DAY = WEEKDAYS | SATURDAY | SUNDAY;
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final String packageName;
+    private final int days;
+    private final int startMinute;
+    private final int endMinute;
+
+    /**
+     * @param days        máscara de días (MONDAY, TUESDAY, ...)
+     * @param startMinute minuto del día en que empieza el bloqueo (0-1439)
+     * @param endMinute   minuto del día en que termina, excluido (0-1439)
+     */
+    public LockSchedule(String packageName, int days, int startMinute, int endMinute) {
+        if (startMinute < 0 || startMinute >= MINUTES_PER_DAY || endMinute < 0 || endMinute >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Minuto fuera de rango");
+        }
+        this.packageName = packageName;
+        this.days = days & EVERY_DAY;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    public String getPackageName() { return packageName; }
+    public int getDays() { return days; }
+    public int getStartMinute() { return startMinute; }
+    public int getEndMinute() { return endMinute; }
+
+    /**
+     * Añade las franjas de esta regla como intervalos en minutos de la semana (lunes 00:00 = 0)
+     */
+    public void addIntervals(List<int[]> out) {
+        for (int day = 0; day < 7; day++) {
+            if ((days & (1 << day)) == 0) {
+                continue;
+            }
+            int start = day * MINUTES_PER_DAY + startMinute;
+            int end = day * MINUTES_PER_DAY + endMinute;
+            if (endMinute <= startMinute) {
+                end += MINUTES_PER_DAY;
+            }
+            if (end > MINUTES_PER_WEEK) {
+                // La franja del domingo que cruza la medianoche continúa el lunes
+                out.add(new int[]{start, MINUTES_PER_WEEK});
+                out.add(new int[]{0, end - MINUTES_PER_WEEK});
+            } else {
+                out.add(new int[]{start, end});
+            }
+        }
+    }
+
+    /**
+     * Convierte un instante en el minuto de la semana local, empezando el lunes a las 00:00
+     */
+    public static int minuteOfWeek(long epochMillis, TimeZone timeZone) {
+        long local = epochMillis + timeZone.getOffset(epochMillis);
+        long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+        // El 1 de enero de 1970 fue jueves
+        int dayOfWeek = (int) Math.floorMod(epochDay + 3, 7);
+        int minuteOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / (60 * 1000));
+        return dayOfWeek * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    /**
+     * Codifica la regla como "paquete|días|inicio|fin"
+     */
+    public String encode() {
+        return packageName + "|" + days + "|" + startMinute + "|" + endMinute;
+    }
+
+    /**
+     * Decodifica una regla; retorna null si el texto no es válido
+     */
+    public static LockSchedule decode(String encoded) {
+        String[] parts = encoded.split("\\|");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new LockSchedule(parts[0], Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Codifica una lista de reglas separándolas con ';'
+     */
+    public static String encodeAll(List<LockSchedule> schedules) {
+        StringBuilder builder = new StringBuilder();
+        for (LockSchedule schedule : schedules) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+            builder.append(schedule.encode());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodifica una lista de reglas, descartando las inválidas
+     */
+    public static List<LockSchedule> decodeAll(String encoded) {
+        List<LockSchedule> schedules = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return schedules;
+        }
+        for (String part : encoded.split(";")) {
+            LockSchedule schedule = decode(part);
+            if (schedule != null) {
+                schedules.add(schedule);
+            }
+        }
+        return schedules;
+    }
+
+    @Override
+    public String toString() {
+        return packageName + " días=" + days + " " + startMinute / 60 + ":" + startMinute % 60
+                + "-" + endMinute / 60 + ":" + endMinute % 60;
+    }
+}
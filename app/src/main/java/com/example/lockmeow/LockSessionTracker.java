@@ -0,0 +1,107 @@
+package com.example.lockmeow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Máquina de estados por paquete que decide cuándo mostrar el bloqueo: una sola vez
+ * por cada entrada de la app bloqueada al primer plano, sin duplicados por ciclo
+ */
+public class LockSessionTracker {
+
+    public enum State { IDLE, LOCKED_SHOWN, UNLOCKED_UNTIL }
+
+    /**
+     * Estado de la sesión de bloqueo de un paquete
+     */
+    private static class Session {
+        State state = State.IDLE;
+        long unlockedUntil;
+    }
+
+    private final Map<String, Session> sessions = new HashMap<>();
+    private String foregroundPackage = "";
+
+    /**
+     * Procesa la app en primer plano y retorna true si hay que mostrar el bloqueo
+     */
+    public boolean onForeground(String packageName, boolean locked, long now) {
+        if (!packageName.equals(foregroundPackage)) {
+            leave(foregroundPackage);
+            foregroundPackage = packageName;
+        }
+        if (!locked) {
+            // La app dejó de estar bloqueada (por ejemplo, terminó su franja horaria)
+            leave(packageName);
+            return false;
+        }
+        Session session = sessions.get(packageName);
+        if (session == null) {
+            session = new Session();
+            sessions.put(packageName, session);
+        }
+        switch (session.state) {
+            case LOCKED_SHOWN:
+                return false;
+            case UNLOCKED_UNTIL:
+                if (now < session.unlockedUntil) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        session.state = State.LOCKED_SHOWN;
+        return true;
+    }
+
+    /**
+     * Al salir una app del primer plano su bloqueo mostrado se cierra
+     */
+    private void leave(String packageName) {
+        Session session = sessions.get(packageName);
+        if (session != null && session.state == State.LOCKED_SHOWN) {
+            session.state = State.IDLE;
+        }
+    }
+
+    /**
+     * Permite usar la app sin bloqueo hasta el instante indicado
+     */
+    public void unlockUntil(String packageName, long deadline) {
+        Session session = sessions.get(packageName);
+        if (session == null) {
+            session = new Session();
+            sessions.put(packageName, session);
+        }
+        session.state = State.UNLOCKED_UNTIL;
+        session.unlockedUntil = deadline;
+    }
+
+    /**
+     * Termina el desbloqueo temporal de un paquete; si sigue en primer plano se bloqueará
+     * en el siguiente ciclo
+     */
+    public void relock(String packageName) {
+        Session session = sessions.get(packageName);
+        if (session != null && session.state == State.UNLOCKED_UNTIL) {
+            session.state = State.IDLE;
+        }
+    }
+
+    /**
+     * Cierra el bloqueo mostrado aunque la detección aún no haya visto salir la app (p. ej.
+     * al pulsar Inicio); si la app sigue en primer plano se bloqueará en el siguiente ciclo
+     */
+    public void dismiss(String packageName) {
+        leave(packageName);
+    }
+
+    /**
+     * Retorna el estado actual de la sesión de un paquete
+     */
+    public State getState(String packageName) {
+        Session session = sessions.get(packageName);
+        return session != null ? session.state : State.IDLE;
+    }
+}
@@ -6,6 +6,7 @@ import android.content.SharedPreferences;
 import android.graphics.drawable.AnimationDrawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewTreeObserver;
@@ -39,6 +40,8 @@ public class MainActivity extends AppCompatActivity {
     private DatabaseReference database;
     String uid, gato;
     Boolean isReady = false;
+    // Tope para el splash si la precarga de datos tarda más de lo normal
+    private static final long SPLASH_TIMEOUT_MS = 1000;
     ConfiFragment confiFragment = new ConfiFragment();
     ImageView gatoImageView;
     AnimationDrawable gatoAnimation;
@@ -53,6 +56,10 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         // Jeyms: Instalar y mostrar el splash screen
         SplashScreen splashScreen = SplashScreen.installSplashScreen(this);
+        // Inicializar el gestor de datos con estructuras implementadas; la carga de apps
+        // ocurre en segundo plano y el splash se retira cuando termina
+        dataManager = AppDataManager.getInstance();
+        dataManager.warmUp(this);
         View content =  findViewById(android.R.id.content);
         // Jeyms: Agregar un listener para detectar cuando la vista esté lista para ser dibujada
         content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -60,13 +67,14 @@ public class MainActivity extends AppCompatActivity {
             public boolean onPreDraw() {
                 //Jeyms: Verificar si el contenido esta listo
                 if (isReady){
+                    // Jeyms: Si está listo, eliminar el listener y dejar dibujar el primer frame
                     content.getViewTreeObserver().removeOnPreDrawListener(this);
-                    // Jeyms: Si está listo, eliminar el listener
+                    return true;
                 }
-                dissmisSplashScreen();
                 return false;
             }
         });
+        dissmisSplashScreen(content);
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
@@ -75,10 +83,7 @@ public class MainActivity extends AppCompatActivity {
         auth = FirebaseAuth.getInstance();
         user = auth.getCurrentUser();
         gatoImageView = findViewById(R.id.gatoImageView);
-        
-        // Inicializar el gestor de datos con estructuras implementadas
-        dataManager = AppDataManager.getInstance();
-        dataManager.loadInstalledApps(this);
+
         if (user == null) {
             Intent intent = new Intent(getApplicationContext(), LoginActivity.class);
             startActivity(intent);
@@ -191,17 +196,32 @@ public class MainActivity extends AppCompatActivity {
                 startActivity(intent);
             }
         });
+        if (LockLog.VERBOSE) {
+            // Solo en builds con registro de detección: mantener pulsado guarda los diagnósticos del bloqueo
+            Statsview.setOnLongClickListener(v -> {
+                ApplockService.requestDump(this);
+                Toast.makeText(this, "Diagnósticos guardados en la carpeta de la app", Toast.LENGTH_SHORT).show();
+                return true;
+            });
+        }
 
 
     }
 
 
-    private void dissmisSplashScreen() {
-        // Jeyms: Retrasar la actualizacion del estado isReady
-        new Handler().postDelayed(() -> {
-            // Jeyms: Establecer isReady en true despues de 1000 milisegundos (1 segundo)
-            isReady = true;
-        }, 1000);
-
+    /**
+     * Marca el contenido como listo cuando termina la precarga de AppDataManager, o al
+     * cumplirse SPLASH_TIMEOUT_MS si tarda más, y pide un nuevo frame
+     */
+    private void dissmisSplashScreen(View content) {
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable ready = () -> {
+            if (!isReady) {
+                isReady = true;
+                content.invalidate();
+            }
+        };
+        dataManager.whenReady(ready);
+        handler.postDelayed(ready, SPLASH_TIMEOUT_MS);
     }
 }
\ No newline at end of file
@@ -0,0 +1,297 @@
+package com.example.lockmeow;
+
+import com.example.lockmeow.datastructures.IntervalIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Política de bloqueo compilada en un archivo binario que se consulta en el sitio a
+ * través de un MappedByteBuffer, sin parsear XML ni construir mapas al arrancar.
+ *
+ * Formato (big endian):
+ *  cabecera  magic, versión, secuencia del diario (long), número de entradas,
+ *            versión de las reglas por horario y cuotas
+ *  entradas  32 bytes cada una, ordenadas por hash del paquete y luego por nombre:
+ *            hash, flags, cuota (long), offset y longitud del nombre, offset y número de franjas
+ *  franjas   pares {inicio, fin} en minutos de la semana, ya fusionados
+ *  nombres   paquetes en UTF-8
+ */
+public final class MappedLockPolicy implements LockRules {
+    private static final int MAGIC = 0x4C4B5031; // "LKP1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 32;
+    private static final int FLAG_LOCKED = 1;
+
+    // Desplazamientos dentro de cada entrada
+    private static final int HASH = 0;
+    private static final int FLAGS = 4;
+    private static final int QUOTA = 8;
+    private static final int NAME_OFFSET = 16;
+    private static final int NAME_LENGTH = 20;
+    private static final int INTERVALS_OFFSET = 24;
+    private static final int INTERVAL_COUNT = 28;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int lockedCount;
+    private final long journalSeq;
+    private final int rulesVersion;
+
+    private MappedLockPolicy(ByteBuffer buffer, int count, int lockedCount, long journalSeq, int rulesVersion) {
+        this.buffer = buffer;
+        this.count = count;
+        this.lockedCount = lockedCount;
+        this.journalSeq = journalSeq;
+        this.rulesVersion = rulesVersion;
+    }
+
+    /**
+     * Mapea el archivo; retorna null si no existe o no tiene un formato válido
+     */
+    public static MappedLockPolicy open(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+        return wrap(buffer);
+    }
+
+    /**
+     * Valida la cabecera y los límites de cada entrada para que las consultas no salgan del búfer
+     */
+    static MappedLockPolicy wrap(ByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+        long journalSeq = buffer.getLong(8);
+        int count = buffer.getInt(16);
+        if (count < 0 || (long) HEADER_SIZE + (long) count * ENTRY_SIZE > size) {
+            return null;
+        }
+        int lockedCount = 0;
+        int previousHash = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            int hash = buffer.getInt(entry + HASH);
+            long nameEnd = (long) buffer.getInt(entry + NAME_OFFSET) + buffer.getInt(entry + NAME_LENGTH);
+            long intervalsEnd = (long) buffer.getInt(entry + INTERVALS_OFFSET)
+                    + (long) buffer.getInt(entry + INTERVAL_COUNT) * 8;
+            if (hash < previousHash || buffer.getInt(entry + NAME_OFFSET) < 0 || buffer.getInt(entry + NAME_LENGTH) < 0
+                    || nameEnd > size || buffer.getInt(entry + INTERVALS_OFFSET) < 0
+                    || buffer.getInt(entry + INTERVAL_COUNT) < 0 || intervalsEnd > size) {
+                return null;
+            }
+            previousHash = hash;
+            if ((buffer.getInt(entry + FLAGS) & FLAG_LOCKED) != 0) {
+                lockedCount++;
+            }
+        }
+        return new MappedLockPolicy(buffer, count, lockedCount, journalSeq, buffer.getInt(20));
+    }
+
+    @Override
+    public boolean isLocked(String packageName, int minuteOfWeek) {
+        int entry = find(packageName);
+        if (entry < 0) {
+            return false;
+        }
+        if ((buffer.getInt(entry + FLAGS) & FLAG_LOCKED) != 0) {
+            return true;
+        }
+        // Misma búsqueda binaria que IntervalIndex, leyendo los pares en el sitio
+        int base = buffer.getInt(entry + INTERVALS_OFFSET);
+        int low = 0;
+        int high = buffer.getInt(entry + INTERVAL_COUNT) - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(base + mid * 8) <= minuteOfWeek) {
+                candidate = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return candidate >= 0 && minuteOfWeek < buffer.getInt(base + candidate * 8 + 4);
+    }
+
+    @Override
+    public long getQuotaMillis(String packageName) {
+        int entry = find(packageName);
+        return entry >= 0 ? buffer.getLong(entry + QUOTA) : 0;
+    }
+
+    @Override
+    public int size() {
+        return lockedCount;
+    }
+
+    /**
+     * Secuencia de LockJournal que ya está incluida en el archivo
+     */
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    /**
+     * Versión de las reglas por horario y cuotas con la que se compiló el archivo
+     */
+    public int getRulesVersion() {
+        return rulesVersion;
+    }
+
+    /**
+     * Retorna el desplazamiento de la entrada del paquete, o -1 si no tiene reglas
+     */
+    private int find(String packageName) {
+        int hash = packageName.hashCode();
+        int low = 0;
+        int high = count - 1;
+        // Primera entrada con ese hash
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(HEADER_SIZE + mid * ENTRY_SIZE + HASH) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = low; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (buffer.getInt(entry + HASH) != hash) {
+                break;
+            }
+            if (nameEquals(entry, packageName)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int entry, String packageName) {
+        int offset = buffer.getInt(entry + NAME_OFFSET);
+        int length = buffer.getInt(entry + NAME_LENGTH);
+        // Los nombres de paquete son ASCII: se comparan byte a byte sin codificar la cadena
+        if (length == packageName.length()) {
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                char c = packageName.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                if (buffer.get(offset + i) != (byte) c) {
+                    return false;
+                }
+            }
+            if (ascii) {
+                return true;
+            }
+        }
+        byte[] encoded = packageName.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serializa la política al formato del archivo
+     */
+    static ByteBuffer encode(LockPolicy policy) {
+        Set<String> packages = new LinkedHashSet<>(policy.getLockedPackages());
+        packages.addAll(policy.getScheduleIndex().keySet());
+        packages.addAll(policy.getQuotas().keySet());
+        List<String> sorted = new ArrayList<>(packages);
+        Collections.sort(sorted, (a, b) -> {
+            int byHash = Integer.compare(a.hashCode(), b.hashCode());
+            return byHash != 0 ? byHash : a.compareTo(b);
+        });
+
+        Map<String, IntervalIndex> schedules = policy.getScheduleIndex();
+        int intervalBytes = 0;
+        int nameBytes = 0;
+        List<byte[]> names = new ArrayList<>(sorted.size());
+        for (String packageName : sorted) {
+            IntervalIndex index = schedules.get(packageName);
+            intervalBytes += index != null ? index.size() * 8 : 0;
+            byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            nameBytes += name.length;
+        }
+
+        int intervalsBase = HEADER_SIZE + sorted.size() * ENTRY_SIZE;
+        int namesBase = intervalsBase + intervalBytes;
+        ByteBuffer buffer = ByteBuffer.allocate(namesBase + nameBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(policy.getJournalSeq()).putInt(sorted.size())
+                .putInt(policy.getRulesVersion());
+        int intervalOffset = intervalsBase;
+        int nameOffset = namesBase;
+        for (int i = 0; i < sorted.size(); i++) {
+            String packageName = sorted.get(i);
+            IntervalIndex index = schedules.get(packageName);
+            int intervals = index != null ? index.size() : 0;
+            byte[] name = names.get(i);
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            buffer.putInt(entry + HASH, packageName.hashCode());
+            buffer.putInt(entry + FLAGS, policy.isLocked(packageName) ? FLAG_LOCKED : 0);
+            buffer.putLong(entry + QUOTA, policy.getQuotaMillis(packageName));
+            buffer.putInt(entry + NAME_OFFSET, nameOffset);
+            buffer.putInt(entry + NAME_LENGTH, name.length);
+            buffer.putInt(entry + INTERVALS_OFFSET, intervalOffset);
+            buffer.putInt(entry + INTERVAL_COUNT, intervals);
+            for (int j = 0; j < intervals; j++) {
+                buffer.putInt(intervalOffset, index.getStart(j));
+                buffer.putInt(intervalOffset + 4, index.getEnd(j));
+                intervalOffset += 8;
+            }
+            for (int j = 0; j < name.length; j++) {
+                buffer.put(nameOffset + j, name[j]);
+            }
+            nameOffset += name.length;
+        }
+        return buffer;
+    }
+
+    /**
+     * Escribe el archivo de forma atómica: archivo temporal, fsync y renombrado. Quien
+     * ya lo tenga mapeado sigue leyendo la versión anterior hasta que lo vuelva a abrir
+     */
+    public static boolean write(File file, LockPolicy policy) {
+        ByteBuffer buffer = encode(policy);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            stream.write(buffer.array(), 0, buffer.limit());
+            stream.getFD().sync();
+        } catch (IOException e) {
+            return false;
+        }
+        return tmp.renameTo(file);
+    }
+}
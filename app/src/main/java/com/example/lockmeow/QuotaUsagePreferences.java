@@ -0,0 +1,40 @@
+package com.example.lockmeow;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * Guarda el contador de uso diario en un archivo de preferencias propio, para no
+ * reescribir la lista de bloqueos cada vez que se actualiza el contador
+ */
+public class QuotaUsagePreferences implements UsageQuotaTracker.Store {
+    private static final String PREFERENCE_NAME = "QuotaUsage";
+    private static final String KEY_DAY = "day";
+    private static final String KEY_USAGE = "usage";
+
+    private final SharedPreferences pref;
+
+    public QuotaUsagePreferences(Context context) {
+        this.pref = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public long loadDay() {
+        return pref.getLong(KEY_DAY, 0);
+    }
+
+    @Override
+    public Map<String, Long> loadUsage() {
+        return SharedPreferencies.decodeMillis(pref.getString(KEY_USAGE, ""));
+    }
+
+    @Override
+    public void save(long day, Map<String, Long> usage) {
+        pref.edit()
+                .putLong(KEY_DAY, day)
+                .putString(KEY_USAGE, SharedPreferencies.encodeMillis(usage))
+                .apply();
+    }
+}
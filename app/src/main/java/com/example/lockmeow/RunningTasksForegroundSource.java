@@ -0,0 +1,40 @@
+package com.example.lockmeow;
+
+import android.app.ActivityManager;
+
+import java.util.List;
+
+/**
+ * Detección heredada basada en ActivityManager.getRunningTasks, para versiones
+ * anteriores a Lollipop
+ */
+public class RunningTasksForegroundSource implements ForegroundAppSource {
+    private final ActivityManager activityManager;
+    private String foregroundPackage;
+    private long lastSwitchTimestamp;
+
+    public RunningTasksForegroundSource(ActivityManager activityManager) {
+        this.activityManager = activityManager;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public String poll(long now) {
+        List<ActivityManager.RunningTaskInfo> taskInfo = activityManager.getRunningTasks(1);
+        if (taskInfo == null || taskInfo.isEmpty() || taskInfo.get(0).topActivity == null) {
+            return foregroundPackage;
+        }
+        String packageName = taskInfo.get(0).topActivity.getPackageName();
+        if (!packageName.equals(foregroundPackage)) {
+            // Sin eventos, el cambio se fecha en el ciclo que lo detecta
+            foregroundPackage = packageName;
+            lastSwitchTimestamp = now;
+        }
+        return foregroundPackage;
+    }
+
+    @Override
+    public long getLastSwitchTimestamp() {
+        return lastSwitchTimestamp;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.lockmeow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fuente en memoria que reproduce una traza sintética de cambios de aplicación.
+ * No depende de Android, sirve para pruebas y mediciones en la JVM
+ */
+public class ScriptedForegroundSource implements ForegroundAppSource {
+    private final List<Long> timestamps = new ArrayList<>();
+    private final List<String> packages = new ArrayList<>();
+    private int next;
+    private String foregroundPackage;
+    private long lastSwitchTimestamp;
+
+    /**
+     * Añade a la traza un cambio a primer plano; los instantes deben ser crecientes
+     */
+    public ScriptedForegroundSource at(long timestamp, String packageName) {
+        if (!timestamps.isEmpty() && timestamp < timestamps.get(timestamps.size() - 1)) {
+            throw new IllegalArgumentException("La traza debe estar ordenada por tiempo");
+        }
+        timestamps.add(timestamp);
+        packages.add(packageName);
+        return this;
+    }
+
+    @Override
+    public String poll(long now) {
+        while (next < timestamps.size() && timestamps.get(next) <= now) {
+            foregroundPackage = packages.get(next);
+            lastSwitchTimestamp = timestamps.get(next);
+            next++;
+        }
+        return foregroundPackage;
+    }
+
+    @Override
+    public long getLastSwitchTimestamp() {
+        return lastSwitchTimestamp;
+    }
+
+    /**
+     * Retorna el número de cambios que quedan por reproducir
+     */
+    public int remaining() {
+        return timestamps.size() - next;
+    }
+}
@@ -3,19 +3,81 @@ package com.example.lockmeow;
 import android.content.Context;
 import android.content.SharedPreferences;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Almacén único por proceso de las preferencias de la app. Las apps bloqueadas se
+ * cargan una sola vez en un HashSet, de modo que las consultas por app son O(1)
+ */
 public class SharedPreferencies {
 
-    private static final String SHARED_APP_PREFERENCE_NAME = "SharedRef";
-    private SharedPreferences pref;
+    static final String SHARED_APP_PREFERENCE_NAME = "SharedRef";
+    // Instantánea de los paquetes bloqueados separados por comas; los cambios posteriores
+    // están en LockJournal, que la reescribe al compactar
+    static final String KEY_LOCKED_APPS = "lockedApps";
+    // Formato antiguo: listSize + una clave app_i por paquete; solo se lee para migrar
+    private static final String KEY_LIST_SIZE = "listSize";
+    private static final String KEY_APP_PREFIX = "app_";
+    private static final String KEY_SCHEDULES = "lockSchedules";
+    private static final String KEY_QUOTAS = "lockQuotas";
+    // Se incrementa con cada cambio de horarios o cuotas; el archivo de la política lo
+    // guarda para detectar que quedó desactualizado. Vive en un archivo propio de una sola
+    // clave para que el servicio pueda validarlo al arrancar sin leer todas las preferencias
+    private static final String RULES_PREFERENCE_NAME = "LockRules";
+    private static final String KEY_RULES_VERSION = "lockRulesVersion";
+    private static final String KEY_GRACE_MINUTES = "graceMinutes";
+    private static final int DEFAULT_GRACE_MINUTES = 5;
+    private static SharedPreferencies instance;
 
-    public SharedPreferencies(Context context) {
+    /**
+     * Lo que cambió de verdad en un cambio masivo: las apps que pasaron a estar bloqueadas
+     * y las que dejaron de estarlo, en el orden en que se anotaron en el diario
+     */
+    public static final class CambioMasivo {
+        public final List<String> bloqueadas;
+        public final List<String> desbloqueadas;
+
+        CambioMasivo(List<String> bloqueadas, List<String> desbloqueadas) {
+            this.bloqueadas = Collections.unmodifiableList(bloqueadas);
+            this.desbloqueadas = Collections.unmodifiableList(desbloqueadas);
+        }
+
+        public boolean isEmpty() {
+            return bloqueadas.isEmpty() && desbloqueadas.isEmpty();
+        }
+    }
+
+    private final SharedPreferences pref;
+    private final SharedPreferences rulesPref;
+    private final LockJournal journal;
+    // Espejo en memoria de instantánea + diario; se protege con el monitor de la instancia
+    private final Set<String> appsBloqueadas = new LinkedHashSet<>();
+    private boolean mirrorStale = true;
+    // SharedPreferences solo guarda referencias débiles a sus listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener = (prefs, key) -> {
+        if (key == null || KEY_LOCKED_APPS.equals(key)) {
+            invalidateMirror();
+        }
+    };
+
+    private SharedPreferencies(Context context) {
         this.pref = context.getSharedPreferences(SHARED_APP_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        this.rulesPref = context.getSharedPreferences(RULES_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        this.journal = LockJournal.getInstance(context);
+        pref.registerOnSharedPreferenceChangeListener(listener);
     }
 
-    public static SharedPreferencies getInstance(Context context) {
-        return new SharedPreferencies(context);
+    public static synchronized SharedPreferencies getInstance(Context context) {
+        if (instance == null) {
+            instance = new SharedPreferencies(context.getApplicationContext());
+        }
+        return instance;
     }
 
     public void putString(String key, String value) {
@@ -35,44 +97,315 @@ public class SharedPreferencies {
     }
 
     public void putListString(List<String> list) {
-        SharedPreferences.Editor editor = pref.edit();
-        editor.putInt("listSize", list.size());
-        for (int i = 0; i < list.size(); i++) {
-            editor.putString("app_" + i, list.get(i));
-        }
-        editor.apply();
+        reemplazarAppsBloqueadas(list);
+    }
+
+    /**
+     * Bloquea varias apps con una sola escritura del diario y una sola publicación de la política
+     */
+    public CambioMasivo bloquearApps(Collection<String> packages) {
+        return aplicarCambioMasivo(packages, Collections.<String>emptySet(), false);
+    }
+
+    /**
+     * Desbloquea varias apps con una sola escritura del diario y una sola publicación de la política
+     */
+    public CambioMasivo desbloquearApps(Collection<String> packages) {
+        return aplicarCambioMasivo(Collections.<String>emptySet(), packages, false);
     }
 
-    public void agregarAppDesbloqueada(String packageName, Context context) {
-        List<String> appsBloqueadas = getListString();
-        if (appsBloqueadas.contains(packageName)) {
-            appsBloqueadas.remove(packageName);
-            putListString(appsBloqueadas);
+    /**
+     * Reemplaza la lista completa de apps bloqueadas; solo se anotan las diferencias
+     */
+    public CambioMasivo reemplazarAppsBloqueadas(Collection<String> packages) {
+        return aplicarCambioMasivo(new LinkedHashSet<>(packages), Collections.<String>emptySet(), true);
+    }
+
+    /**
+     * Aplica todo el cambio bajo el monitor: un grupo en el diario y una publicación.
+     * Al reemplazar, se desbloquea todo lo que no esté en bloquear. La política se publica
+     * dentro del monitor, junto con la secuencia del diario, para que ningún otro cambio
+     * se publique entre medias con una secuencia mayor. Retorna las diferencias aplicadas
+     */
+    private CambioMasivo aplicarCambioMasivo(Collection<String> bloquear, Collection<String> desbloquear, boolean reemplazar) {
+        synchronized (this) {
+            ensureMirror();
+            if (reemplazar) {
+                List<String> sobrantes = new ArrayList<>();
+                for (String packageName : appsBloqueadas) {
+                    if (!bloquear.contains(packageName)) {
+                        sobrantes.add(packageName);
+                    }
+                }
+                desbloquear = sobrantes;
+            }
+            List<String> added = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (String packageName : desbloquear) {
+                if (appsBloqueadas.remove(packageName)) {
+                    removed.add(packageName);
+                }
+            }
+            for (String packageName : bloquear) {
+                if (appsBloqueadas.add(packageName)) {
+                    added.add(packageName);
+                }
+            }
+            CambioMasivo cambio = new CambioMasivo(added, removed);
+            if (cambio.isEmpty()) {
+                return cambio;
+            }
+            long seq = journal.appendBatch(added, removed);
+            LockPolicyStore.getInstance().setLocked(new ArrayList<>(appsBloqueadas), seq);
+            return cambio;
         }
     }
 
-    public List<String> getListString() {
-        int size = getInteger("listSize");
-        List<String> temp = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            temp.add(getString("app_" + i));
+    public synchronized void agregarAppDesbloqueada(String packageName, Context context) {
+        ensureMirror();
+        if (appsBloqueadas.remove(packageName)) {
+            LockPolicyStore.getInstance().unlock(packageName, journal.append(packageName, false));
         }
-        return temp;
     }
 
-    public void agregarAppBloqueada(String packageName, Context context) {
-        List<String> appsBloqueadas = getListString();
-        if (!appsBloqueadas.contains(packageName)) {
-            appsBloqueadas.add(packageName);
-            putListString(appsBloqueadas);
+    public synchronized List<String> getListString() {
+        ensureMirror();
+        return new ArrayList<>(appsBloqueadas);
+    }
+
+    public synchronized void agregarAppBloqueada(String packageName, Context context) {
+        ensureMirror();
+        if (appsBloqueadas.add(packageName)) {
+            LockPolicyStore.getInstance().lock(packageName, journal.append(packageName, true));
         }
     }
     
+    /**
+     * Construye la política completa desde las preferencias. Lista, secuencia del diario
+     * y versión de reglas se leen bajo el mismo monitor que las modifica
+     */
+    public synchronized LockPolicy leerPolitica() {
+        ensureMirror();
+        return LockPolicy.of(appsBloqueadas, getHorariosBloqueo(), getCuotasDiarias())
+                .withJournalSeq(journal.getLastSeq())
+                .withRulesVersion(getVersionReglas());
+    }
+
+    /**
+     * Versión actual de las reglas por horario y las cuotas
+     */
+    public int getVersionReglas() {
+        return rulesPref.getInt(KEY_RULES_VERSION, 0);
+    }
+
+    /**
+     * Lee la versión de las reglas sin crear la instancia, es decir, sin cargar el resto
+     * de las preferencias
+     */
+    static int leerVersionReglas(Context context) {
+        return context.getSharedPreferences(RULES_PREFERENCE_NAME, Context.MODE_PRIVATE)
+                .getInt(KEY_RULES_VERSION, 0);
+    }
+
     /**
      * Verifica si una aplicación está bloqueada
      */
-    public boolean isAppBloqueada(String packageName, Context context) {
-        List<String> appsBloqueadas = getListString();
+    public synchronized boolean isAppBloqueada(String packageName, Context context) {
+        ensureMirror();
         return appsBloqueadas.contains(packageName);
     }
-}
\ No newline at end of file
+
+    /**
+     * Reconstruye el espejo desde la instantánea y el diario, migrando antes el
+     * formato antiguo si todavía existe
+     */
+    private void ensureMirror() {
+        if (!mirrorStale) {
+            return;
+        }
+        if (!pref.contains(KEY_LOCKED_APPS) && pref.contains(KEY_LIST_SIZE)) {
+            migrarListaAntigua();
+        }
+        journal.load(appsBloqueadas);
+        mirrorStale = false;
+    }
+
+    /**
+     * Convierte listSize/app_i en la instantánea de una sola clave y borra todas las
+     * claves app_*, incluidas las que quedaron huérfanas al encoger la lista
+     */
+    private void migrarListaAntigua() {
+        Set<String> legacy = new LinkedHashSet<>();
+        int size = getInteger(KEY_LIST_SIZE);
+        for (int i = 0; i < size; i++) {
+            String packageName = getString(KEY_APP_PREFIX + i);
+            if (!packageName.isEmpty()) {
+                legacy.add(packageName);
+            }
+        }
+        SharedPreferences.Editor editor = pref.edit();
+        for (String key : pref.getAll().keySet()) {
+            if (key.startsWith(KEY_APP_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.remove(KEY_LIST_SIZE);
+        editor.putString(KEY_LOCKED_APPS, encodeApps(legacy));
+        editor.apply();
+    }
+
+    /**
+     * La instantánea solo cambia al compactar el diario o por un escritor externo
+     */
+    private synchronized void invalidateMirror() {
+        mirrorStale = true;
+    }
+
+    /**
+     * Codifica los paquetes como "paquete,paquete"; los nombres de paquete no contienen comas
+     */
+    static String encodeApps(Collection<String> packages) {
+        StringBuilder builder = new StringBuilder();
+        for (String packageName : packages) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(packageName);
+        }
+        return builder.toString();
+    }
+
+    static void decodeApps(String encoded, Collection<String> out) {
+        int start = 0;
+        int length = encoded.length();
+        while (start < length) {
+            int end = encoded.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                out.add(encoded.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Obtiene las reglas de bloqueo por horario guardadas
+     */
+    public List<LockSchedule> getHorariosBloqueo() {
+        return LockSchedule.decodeAll(getString(KEY_SCHEDULES));
+    }
+
+    /**
+     * Añade una regla de bloqueo por horario y la aplica al servicio sin reiniciarlo
+     */
+    public synchronized void agregarHorarioBloqueo(LockSchedule schedule) {
+        List<LockSchedule> schedules = getHorariosBloqueo();
+        schedules.add(schedule);
+        putHorariosBloqueo(schedules);
+    }
+
+    /**
+     * Elimina todas las reglas por horario de un paquete
+     */
+    public synchronized void eliminarHorariosBloqueo(String packageName) {
+        List<LockSchedule> schedules = getHorariosBloqueo();
+        List<LockSchedule> remaining = new ArrayList<>();
+        for (LockSchedule schedule : schedules) {
+            if (!schedule.getPackageName().equals(packageName)) {
+                remaining.add(schedule);
+            }
+        }
+        if (remaining.size() != schedules.size()) {
+            putHorariosBloqueo(remaining);
+        }
+    }
+
+    private void putHorariosBloqueo(List<LockSchedule> schedules) {
+        int version = getVersionReglas() + 1;
+        pref.edit().putString(KEY_SCHEDULES, LockSchedule.encodeAll(schedules)).apply();
+        rulesPref.edit().putInt(KEY_RULES_VERSION, version).apply();
+        LockPolicyStore.getInstance().setSchedules(schedules, version);
+    }
+
+    /**
+     * Obtiene las cuotas diarias de uso por paquete, en milisegundos
+     */
+    public Map<String, Long> getCuotasDiarias() {
+        return decodeMillis(getString(KEY_QUOTAS));
+    }
+
+    /**
+     * Asigna una cuota diaria de uso a un paquete; al agotarla, el servicio la bloquea
+     */
+    public synchronized void setCuotaDiaria(String packageName, int minutes) {
+        Map<String, Long> quotas = getCuotasDiarias();
+        quotas.put(packageName, minutes * 60L * 1000);
+        putCuotasDiarias(quotas);
+    }
+
+    /**
+     * Elimina la cuota diaria de un paquete
+     */
+    public synchronized void eliminarCuotaDiaria(String packageName) {
+        Map<String, Long> quotas = getCuotasDiarias();
+        if (quotas.remove(packageName) != null) {
+            putCuotasDiarias(quotas);
+        }
+    }
+
+    private void putCuotasDiarias(Map<String, Long> quotas) {
+        int version = getVersionReglas() + 1;
+        pref.edit().putString(KEY_QUOTAS, encodeMillis(quotas)).apply();
+        rulesPref.edit().putInt(KEY_RULES_VERSION, version).apply();
+        LockPolicyStore.getInstance().setQuotas(quotas, version);
+    }
+
+    /**
+     * Obtiene los minutos de gracia que se conceden al desbloquear una app
+     */
+    public int getMinutosGracia() {
+        return pref.getInt(KEY_GRACE_MINUTES, DEFAULT_GRACE_MINUTES);
+    }
+
+    public void setMinutosGracia(int minutes) {
+        putInteger(KEY_GRACE_MINUTES, minutes);
+    }
+
+    /**
+     * Codifica un mapa paquete -> milisegundos como "paquete=ms;paquete=ms"
+     */
+    public static String encodeMillis(Map<String, Long> values) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodifica un mapa codificado con encodeMillis, descartando entradas inválidas
+     */
+    public static Map<String, Long> decodeMillis(String encoded) {
+        Map<String, Long> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String part : encoded.split(";")) {
+            int separator = part.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                values.put(part.substring(0, separator), Long.parseLong(part.substring(separator + 1)));
+            } catch (NumberFormatException ignored) {
+                // Entrada corrupta: se descarta
+            }
+        }
+        return values;
+    }
+}
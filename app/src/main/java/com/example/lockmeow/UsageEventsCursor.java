@@ -0,0 +1,58 @@
+package com.example.lockmeow;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+
+/**
+ * Cursor sobre el flujo de UsageEvents que solo consume los eventos posteriores
+ * al último procesado, para saber qué aplicación está en primer plano sin volver
+ * a consultar las estadísticas diarias de todas las apps en cada ciclo
+ */
+public class UsageEventsCursor implements ForegroundAppSource {
+    // Ventana inicial para el primer ciclo tras arrancar el servicio
+    private static final long BOOTSTRAP_WINDOW_MS = 10 * 1000;
+
+    private final UsageStatsManager usageStatsManager;
+    private final UsageEvents.Event event = new UsageEvents.Event();
+    private long cursor;
+    private String foregroundPackage;
+    private long lastEventTimestamp;
+
+    public UsageEventsCursor(UsageStatsManager usageStatsManager, long now) {
+        this.usageStatsManager = usageStatsManager;
+        this.cursor = now - BOOTSTRAP_WINDOW_MS;
+    }
+
+    /**
+     * Consume los eventos nuevos hasta now y retorna el paquete en primer plano,
+     * o null si todavía no se ha observado ningún cambio
+     */
+    @Override
+    public String poll(long now) {
+        if (now <= cursor) {
+            return foregroundPackage;
+        }
+        UsageEvents events = usageStatsManager.queryEvents(cursor, now);
+        if (events == null) {
+            return foregroundPackage;
+        }
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            long timestamp = event.getTimeStamp();
+            // MOVE_TO_FOREGROUND tiene el mismo valor que ACTIVITY_RESUMED (API 29+)
+            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND && timestamp >= lastEventTimestamp) {
+                foregroundPackage = event.getPackageName();
+                lastEventTimestamp = timestamp;
+            }
+            if (timestamp >= cursor) {
+                cursor = timestamp + 1;
+            }
+        }
+        return foregroundPackage;
+    }
+
+    @Override
+    public long getLastSwitchTimestamp() {
+        return lastEventTimestamp;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.lockmeow;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Acumula de forma incremental el tiempo en primer plano de las apps con cuota diaria,
+ * a partir de los ciclos de detección consecutivos, y guarda el contador periódicamente
+ */
+public class UsageQuotaTracker {
+    // Huecos mayores entre ciclos (pausas, pantalla apagada) no se cuentan como uso
+    private static final long MAX_TICK_GAP_MS = 10 * 1000;
+    private static final long FLUSH_INTERVAL_MS = 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Almacenamiento del contador diario
+     */
+    public interface Store {
+        long loadDay();
+
+        Map<String, Long> loadUsage();
+
+        void save(long day, Map<String, Long> usage);
+    }
+
+    private final Store store;
+    private final Map<String, long[]> usage = new HashMap<>();
+    private long day;
+    private String currentPackage;
+    private long lastTick;
+    private long lastFlush;
+    private boolean dirty;
+
+    public UsageQuotaTracker(Store store) {
+        this.store = store;
+        this.day = store.loadDay();
+        for (Map.Entry<String, Long> entry : store.loadUsage().entrySet()) {
+            usage.put(entry.getKey(), new long[]{entry.getValue()});
+        }
+    }
+
+    /**
+     * Suma al paquete anterior el tiempo transcurrido desde el último ciclo
+     */
+    public void onTick(String packageName, long now, TimeZone timeZone, LockRules policy) {
+        long today = localDay(now, timeZone);
+        if (today != day) {
+            usage.clear();
+            day = today;
+            dirty = true;
+        }
+        if (currentPackage != null && policy.getQuotaMillis(currentPackage) > 0) {
+            long delta = now - lastTick;
+            if (delta > 0 && delta <= MAX_TICK_GAP_MS) {
+                long[] used = usage.get(currentPackage);
+                if (used == null) {
+                    used = new long[1];
+                    usage.put(currentPackage, used);
+                }
+                used[0] += delta;
+                dirty = true;
+            }
+        }
+        currentPackage = packageName;
+        lastTick = now;
+        if (dirty && now - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush(now);
+        }
+    }
+
+    /**
+     * Cierra el intervalo en curso (por ejemplo, al apagarse la pantalla) y guarda el contador
+     */
+    public void pause(long now, TimeZone timeZone, LockRules policy) {
+        onTick(null, now, timeZone, policy);
+        flush(now);
+    }
+
+    /**
+     * Guarda el contador si hubo cambios
+     */
+    public void flush(long now) {
+        if (!dirty) {
+            return;
+        }
+        Map<String, Long> snapshot = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : usage.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue()[0]);
+        }
+        store.save(day, snapshot);
+        dirty = false;
+        lastFlush = now;
+    }
+
+    /**
+     * Retorna el tiempo de uso acumulado hoy por un paquete
+     */
+    public long getUsedMillis(String packageName) {
+        long[] used = usage.get(packageName);
+        return used != null ? used[0] : 0;
+    }
+
+    /**
+     * Verifica si el paquete ya agotó su cuota diaria
+     */
+    public boolean isExhausted(String packageName, LockRules policy) {
+        long quota = policy.getQuotaMillis(packageName);
+        return quota > 0 && getUsedMillis(packageName) >= quota;
+    }
+
+    /**
+     * Retorna el día local (días desde 1970) de un instante
+     */
+    public static long localDay(long epochMillis, TimeZone timeZone) {
+        return Math.floorDiv(epochMillis + timeZone.getOffset(epochMillis), MILLIS_PER_DAY);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.lockmeow;
+
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+
+import java.util.List;
+
+/**
+ * Detección basada en las estadísticas diarias de uso: toma la app usada más
+ * recientemente en los últimos segundos. Es costosa, se usa como respaldo
+ */
+public class UsageStatsForegroundSource implements ForegroundAppSource {
+    private static final long WINDOW_MS = 10 * 1000;
+
+    private final UsageStatsManager usageStatsManager;
+    private long lastSwitchTimestamp;
+
+    public UsageStatsForegroundSource(UsageStatsManager usageStatsManager) {
+        this.usageStatsManager = usageStatsManager;
+    }
+
+    @Override
+    public String poll(long now) {
+        List<UsageStats> stats = usageStatsManager.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, now - WINDOW_MS, now);
+        UsageStats lastUsed = null;
+        if (stats != null) {
+            for (UsageStats usageStats : stats) {
+                if (lastUsed == null || usageStats.getLastTimeUsed() > lastUsed.getLastTimeUsed()) {
+                    lastUsed = usageStats;
+                }
+            }
+        }
+        if (lastUsed == null) {
+            return null;
+        }
+        lastSwitchTimestamp = lastUsed.getLastTimeUsed();
+        return lastUsed.getPackageName();
+    }
+
+    @Override
+    public long getLastSwitchTimestamp() {
+        return lastSwitchTimestamp;
+    }
+}
@@ -1,21 +1,14 @@
 package com.example.lockmeow;
 
-import android.annotation.SuppressLint;
 import android.app.AppOpsManager;
-import android.app.Dialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.Settings;
 import android.view.View;
-import android.view.Window;
-import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
@@ -24,18 +17,15 @@ import androidx.core.view.WindowInsetsCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import android.widget.ImageView;
 import android.widget.PopupMenu;
 
-public class alarmActivity extends AppCompatActivity {
+public class alarmActivity extends AppCompatActivity implements AppCatalogLoader.Listener {
 
     private RecyclerView recyclerView;
-    private List<appModel> appModelList = new ArrayList<>();
     private appAdapter adapter;
-    private Dialog loadingDialog;
+    private AppCatalogLoader catalogLoader;
     private final Context context = this;
     private boolean appsLoaded = false;
 
@@ -50,12 +40,10 @@ public class alarmActivity extends AppCompatActivity {
         });
 
         recyclerView = findViewById(R.id.recycleView);
-        adapter = new appAdapter(appModelList, this);
+        adapter = new appAdapter(this);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setAdapter(adapter);
 
-        setupLoadingDialog();
-
         ImageView permisosMenu = findViewById(R.id.permisosMenu);
         permisosMenu.setOnClickListener(v -> showPopupMenu(v));
 
@@ -87,60 +75,50 @@ public class alarmActivity extends AppCompatActivity {
         popupMenu.show();
     }
 
-    private void setupLoadingDialog() {
-        loadingDialog = new Dialog(this);
-        loadingDialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
-        loadingDialog.setContentView(R.layout.loading_apps);
-        loadingDialog.setCancelable(false);
-
-        TextView title = loadingDialog.findViewById(R.id.dialogTitle);
-        TextView message = loadingDialog.findViewById(R.id.dialogMessage);
-        title.setText("Buscando Apps");
-        message.setText("Cargando");
-    }
-
     @Override
     protected void onResume() {
         super.onResume();
         ApplockService.start(this);
         if(!appsLoaded){
-            loadingDialog.show();
-            new LoadAppsTask().execute();
+            // Las filas aparecen por lotes mientras se cargan; ya no hace falta el diálogo modal
+            catalogLoader = new AppCatalogLoader(context, this);
+            catalogLoader.load();
             appsLoaded = true;
         }
 
     }
 
-    private void getAppsInstaladas() {
-        List<String> blockedApps = SharedPreferencies.getInstance(context).getListString();
-        List<ResolveInfo> packageInfos = getPackageManager().queryIntentActivities(new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER), 0);
-        Set<String> addedPackages = new HashSet<>();
-
-        for (ResolveInfo resolveInfo : packageInfos) {
-            String packageName = resolveInfo.activityInfo.packageName;
-            String appName = resolveInfo.loadLabel(getPackageManager()).toString();
-            Drawable appIcon = resolveInfo.loadIcon(getPackageManager());
-            boolean isBlocked = blockedApps.contains(packageName);
-
-            appModelList.add(new appModel(appName, appIcon, isBlocked ? 1 : 0, packageName));
-            addedPackages.add(packageName);
+    @Override
+    protected void onDestroy() {
+        if (catalogLoader != null) {
+            catalogLoader.cancel();
         }
+        super.onDestroy();
+    }
+
+    @Override
+    public void onAppsLoaded(List<appModel> batch) {
+        // Las apps actualizadas desde la última visita reemplazan su fila
+        adapter.upsert(batch);
     }
 
+    @Override
+    public void onAppsRemoved(List<String> packageNames) {
+        adapter.remove(packageNames);
+    }
 
-    @SuppressLint("StaticFieldLeak")
-    private class LoadAppsTask extends AsyncTask<Void, Void, Void> {
-        @Override
-        protected Void doInBackground(Void... voids) {
-            getAppsInstaladas();
-            return null;
+    @Override
+    public void onIconsLoaded(List<appModel> batch) {
+        List<String> packageNames = new ArrayList<>(batch.size());
+        for (appModel app : batch) {
+            packageNames.add(app.getnamePackage());
         }
+        adapter.notifyIconsLoaded(packageNames);
+    }
 
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            adapter.notifyDataSetChanged();
-            loadingDialog.dismiss();
-        }
+    @Override
+    public void onCatalogLoaded() {
+        catalogLoader = null;
     }
 
     private boolean AccesoPermitido() {
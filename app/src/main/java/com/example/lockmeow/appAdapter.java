@@ -1,6 +1,7 @@
 package com.example.lockmeow;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,70 +9,261 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Lista de apps bloqueables. Cada cambio publica una lista nueva y AsyncListDiffer calcula
+ * fuera del hilo principal qué filas cambiaron; un cambio de bloqueo o de icono solo
+ * vuelve a pintar esa parte de la fila
+ */
 public class appAdapter extends RecyclerView.Adapter<appAdapter.ViewHolder> {
 
-    private final List<appModel> appModels;
+    // Payloads de los rebinds parciales
+    static final Object PAYLOAD_LOCK_STATE = new Object();
+    static final Object PAYLOAD_ICON = new Object();
+
+    private static final DiffUtil.ItemCallback<appModel> DIFF = new DiffUtil.ItemCallback<appModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull appModel oldItem, @NonNull appModel newItem) {
+            return oldItem.getnamePackage().equals(newItem.getnamePackage());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull appModel oldItem, @NonNull appModel newItem) {
+            return oldItem.getappStatus() == newItem.getappStatus()
+                    && oldItem.getappName().equals(newItem.getappName())
+                    && oldItem.getappIcon().equals(newItem.getappIcon());
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull appModel oldItem, @NonNull appModel newItem) {
+            // Solo cambió el estado: basta con el candado
+            if (oldItem.getappName().equals(newItem.getappName())
+                    && oldItem.getappIcon().equals(newItem.getappIcon())) {
+                return PAYLOAD_LOCK_STATE;
+            }
+            return null;
+        }
+    };
+
+    private final AsyncListDiffer<appModel> differ = new AsyncListDiffer<>(this, DIFF);
+    // Última lista enviada al differ; los cambios se aplican sobre ella aunque su diff siga en curso
+    private List<appModel> latest = Collections.emptyList();
+    // Ids estables por paquete, asignados la primera vez que aparece
+    private final Map<String, Long> stableIds = new HashMap<>();
     private final Context context;
     private final AppDataManager dataManager;
+    private final IconCache iconCache;
 
-    public appAdapter(List<appModel> appModels, Context context) {
-        this.appModels = appModels;
+    public appAdapter(Context context) {
         this.context = context;
         this.dataManager = AppDataManager.getInstance();
+        this.iconCache = IconCache.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Agrega las apps nuevas y reemplaza las que ya estaban, manteniendo el orden alfabético
+     */
+    public void upsert(List<appModel> apps) {
+        Map<String, appModel> byPackage = new HashMap<>();
+        for (appModel app : apps) {
+            byPackage.put(app.getnamePackage(), app);
+        }
+        List<appModel> next = new ArrayList<>(latest.size() + apps.size());
+        for (appModel app : latest) {
+            appModel replacement = byPackage.remove(app.getnamePackage());
+            next.add(replacement != null ? replacement : app);
+        }
+        next.addAll(byPackage.values());
+        Collections.sort(next, (a, b) -> a.getappName().compareToIgnoreCase(b.getappName()));
+        submit(next);
+    }
+
+    public void remove(Collection<String> packageNames) {
+        Set<String> removed = new HashSet<>(packageNames);
+        List<appModel> next = new ArrayList<>(latest.size());
+        for (appModel app : latest) {
+            if (!removed.contains(app.getnamePackage())) {
+                next.add(app);
+            }
+        }
+        submit(next);
+    }
+
+    /**
+     * Vuelve a pintar solo el icono de las filas de esos paquetes
+     */
+    public void notifyIconsLoaded(Collection<String> packageNames) {
+        Set<String> loaded = new HashSet<>(packageNames);
+        List<appModel> current = differ.getCurrentList();
+        for (int i = 0; i < current.size(); i++) {
+            if (loaded.contains(current.get(i).getnamePackage())) {
+                notifyItemChanged(i, PAYLOAD_ICON);
+            }
+        }
+    }
+
+    private void submit(List<appModel> next) {
+        latest = Collections.unmodifiableList(next);
+        differ.submitList(latest);
     }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.app_adapter_design, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+        holder.itemView.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                toggle(differ.getCurrentList().get(position).getnamePackage());
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        appModel app = differ.getCurrentList().get(position);
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_LOCK_STATE) {
+                bindStatus(holder, app);
+            } else if (payload == PAYLOAD_ICON) {
+                bindIcon(holder, app.getappIcon());
+            }
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        appModel app = appModels.get(position);
+        appModel app = differ.getCurrentList().get(position);
         holder.appName.setText(app.getappName());
-        holder.appIcon.setImageDrawable(app.getappIcon());
+        bindIcon(holder, app.getappIcon());
+        bindStatus(holder, app);
+    }
+
+    private void bindStatus(ViewHolder holder, appModel app) {
         holder.appStatus.setImageResource(app.getappStatus() == 0 ? R.drawable.unlock_icon : R.drawable.lock_icon);
+    }
 
-        holder.itemView.setOnClickListener(v -> {
-            if (app.getappStatus() == 0) {
-                app.setStatus(1);
-                holder.appStatus.setImageResource(R.drawable.lock_icon);
-                Toast.makeText(context, app.getappName() + " se bloqueó", Toast.LENGTH_SHORT).show();
-                SharedPreferencies.getInstance(context).agregarAppBloqueada(app.getnamePackage(), context);
-                
-                // Usar estructuras de datos implementadas
-                dataManager.recordAction(app.getnamePackage(), app.getappName(), 
-                    AppDataManager.AppAction.ActionType.BLOCK);
-                dataManager.updateAppBlockStatus(app.getnamePackage(), true);
-                
-            } else {
-                app.setStatus(0);
-                holder.appStatus.setImageResource(R.drawable.unlock_icon);
-                Toast.makeText(context, app.getappName() + " se desbloqueó", Toast.LENGTH_SHORT).show();
-                SharedPreferencies.getInstance(context).agregarAppDesbloqueada(app.getnamePackage(), context);
-                
-                // Usar estructuras de datos implementadas
-                dataManager.recordAction(app.getnamePackage(), app.getappName(), 
-                    AppDataManager.AppAction.ActionType.UNBLOCK);
-                dataManager.updateAppBlockStatus(app.getnamePackage(), false);
+    /**
+     * Cambia el estado de una app; la fila se actualiza con el payload de estado. El estado
+     * se lee de la última lista enviada y no de la mostrada: si se pulsa otra vez antes de
+     * que termine el diff, la lista mostrada aún tiene el estado anterior
+     */
+    private void toggle(String packageName) {
+        appModel app = findLatest(packageName);
+        if (app == null) {
+            return;
+        }
+        if (app.getappStatus() == 0) {
+            Toast.makeText(context, app.getappName() + " se bloqueó", Toast.LENGTH_SHORT).show();
+            SharedPreferencies.getInstance(context).agregarAppBloqueada(app.getnamePackage(), context);
+            
+            // Usar estructuras de datos implementadas
+            dataManager.recordAction(app.getnamePackage(), app.getappName(), 
+                AppDataManager.AppAction.ActionType.BLOCK);
+            dataManager.updateAppBlockStatus(app.getnamePackage(), true);
+            upsert(Collections.singletonList(app.withStatus(1)));
+            
+        } else {
+            Toast.makeText(context, app.getappName() + " se desbloqueó", Toast.LENGTH_SHORT).show();
+            SharedPreferencies.getInstance(context).agregarAppDesbloqueada(app.getnamePackage(), context);
+            
+            // Usar estructuras de datos implementadas
+            dataManager.recordAction(app.getnamePackage(), app.getappName(), 
+                AppDataManager.AppAction.ActionType.UNBLOCK);
+            dataManager.updateAppBlockStatus(app.getnamePackage(), false);
+            upsert(Collections.singletonList(app.withStatus(0)));
+        }
+    }
+
+    private appModel findLatest(String packageName) {
+        for (appModel app : latest) {
+            if (app.getnamePackage().equals(packageName)) {
+                return app;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Muestra el icono si ya está en memoria; si no, pone el icono genérico y lo pide a
+     * IconCache. La petición anterior de la fila se cancela, así al deslizar rápido no
+     * se decodifican iconos de filas que ya no se ven
+     */
+    private void bindIcon(ViewHolder holder, IconHandle handle) {
+        Bitmap icon = iconCache.peek(handle);
+        if (holder.iconRequest != null && (icon != null || !handle.equals(holder.iconHandle))) {
+            holder.iconRequest.cancel();
+            holder.iconRequest = null;
+        }
+        holder.iconHandle = handle;
+        if (icon != null) {
+            holder.appIcon.setImageBitmap(icon);
+            return;
+        }
+        if (holder.iconRequest != null) {
+            // Ya hay una petición en curso para este mismo paquete
+            return;
+        }
+        holder.appIcon.setImageResource(android.R.drawable.sym_def_app_icon);
+        holder.iconRequest = iconCache.request(handle, (loaded, bitmap) -> {
+            holder.iconRequest = null;
+            if (bitmap != null && loaded.equals(holder.iconHandle)) {
+                holder.appIcon.setImageBitmap(bitmap);
             }
         });
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        if (holder.iconRequest != null) {
+            holder.iconRequest.cancel();
+            holder.iconRequest = null;
+        }
+        holder.iconHandle = null;
+        holder.appIcon.setImageDrawable(null);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String packageName = differ.getCurrentList().get(position).getnamePackage();
+        Long id = stableIds.get(packageName);
+        if (id == null) {
+            id = (long) stableIds.size();
+            stableIds.put(packageName, id);
+        }
+        return id;
+    }
+
     @Override
     public int getItemCount() {
-        return appModels.size();
+        return differ.getCurrentList().size();
     } //
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
         TextView appName;
         ImageView appIcon, appStatus;
+        // Icono mostrado o pedido para esta fila
+        IconHandle iconHandle;
+        IconCache.Request iconRequest;
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
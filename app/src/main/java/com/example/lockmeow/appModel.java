@@ -1,14 +1,12 @@
 package com.example.lockmeow;
 
-import android.graphics.drawable.Drawable;
-
 public class appModel {
     String appName;
-    Drawable appIcon;
+    IconHandle appIcon; // el bitmap vive en IconCache
     int appStatus; // 0 -> app funciona, 1 -> app no funciona
     String namePackage;
 
-    public appModel(String appName, Drawable appIcon, int appStatus, String namePackage) {
+    public appModel(String appName, IconHandle appIcon, int appStatus, String namePackage) {
         this.appName = appName;
         this.appIcon = appIcon;
         this.appStatus = appStatus;
@@ -19,7 +17,7 @@ public class appModel {
         return appName;
     }
 
-    public Drawable getappIcon() {
+    public IconHandle getappIcon() {
         return appIcon;
     }
 
@@ -31,7 +29,11 @@ public class appModel {
         return namePackage;
     }
 
-    public void setStatus(int appStatus) {
-        this.appStatus = appStatus;
+    /**
+     * Copia con otro estado; la lista del adaptador no se modifica en el sitio para que
+     * DiffUtil pueda comparar la versión anterior con la nueva
+     */
+    public appModel withStatus(int appStatus) {
+        return new appModel(appName, appIcon, appStatus, namePackage);
     }
 }
\ No newline at end of file
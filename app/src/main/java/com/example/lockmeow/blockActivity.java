@@ -1,10 +1,12 @@
 package com.example.lockmeow;
 
 
+import android.content.Intent;
 import android.graphics.PixelFormat;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import android.view.WindowManager;
+import android.widget.Button;
 
 public class blockActivity extends AppCompatActivity {
 
@@ -17,11 +19,38 @@ public class blockActivity extends AppCompatActivity {
                 WindowManager.LayoutParams.MATCH_PARENT,
                 WindowManager.LayoutParams.MATCH_PARENT,
                 WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
-                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL | WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+                // Sin FLAG_NOT_TOUCHABLE: la ventana debe recibir el toque de btnGrace
+                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL,
                 PixelFormat.TRANSLUCENT
         );
         getWindow().setAttributes(params);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED | WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
+        recordCovered(getIntent());
+
+        Button btnGrace = findViewById(R.id.btnGrace);
+        btnGrace.setText("Dame " + SharedPreferencies.getInstance(this).getMinutosGracia() + " minutos");
+        btnGrace.setOnClickListener(v -> {
+            // La gracia solo se concede tras confirmar la credencial del dispositivo. Si se
+            // cancela, la app vuelve al primer plano y el servicio la bloquea de nuevo
+            String packageName = getIntent().getStringExtra("blockedAppPackage");
+            if (packageName != null) {
+                GraceConfirmActivity.start(this, packageName);
+            }
+            finish();
+        });
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        // singleInstance: si ya existe, el bloqueo se reutiliza y no pasa por onCreate
+        recordCovered(intent);
+    }
+
+    private void recordCovered(Intent intent) {
+        long detectedAt = intent.getLongExtra(LockLatencyRecorder.EXTRA_DETECTED_AT, 0);
+        LockLatencyRecorder.getInstance().recordCovered(detectedAt, System.currentTimeMillis());
     }
 
 }
\ No newline at end of file
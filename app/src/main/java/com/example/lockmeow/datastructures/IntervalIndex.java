@@ -0,0 +1,96 @@
+package com.example.lockmeow.datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Índice inmutable de intervalos semiabiertos [inicio, fin) sobre enteros. Al construirlo
+ * ordena y fusiona los intervalos, y responde si un punto está cubierto con búsqueda binaria
+ */
+public class IntervalIndex {
+    public static final IntervalIndex EMPTY = new IntervalIndex(new int[0], new int[0]);
+    
+    private final int[] starts;
+    private final int[] ends;
+    
+    private IntervalIndex(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+    
+    /**
+     * Construye el índice a partir de pares {inicio, fin}; los intervalos vacíos se ignoran
+     */
+    public static IntervalIndex build(List<int[]> intervals) {
+        List<int[]> sorted = new ArrayList<>();
+        for (int[] interval : intervals) {
+            if (interval[1] > interval[0]) {
+                sorted.add(interval);
+            }
+        }
+        if (sorted.isEmpty()) {
+            return EMPTY;
+        }
+        sorted.sort((a, b) -> Integer.compare(a[0], b[0]));
+        
+        int[] starts = new int[sorted.size()];
+        int[] ends = new int[sorted.size()];
+        int count = 0;
+        for (int[] interval : sorted) {
+            // Fusionar con el anterior si se solapan o se tocan
+            if (count > 0 && interval[0] <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], interval[1]);
+            } else {
+                starts[count] = interval[0];
+                ends[count] = interval[1];
+                count++;
+            }
+        }
+        return new IntervalIndex(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+    
+    /**
+     * Verifica si el punto está dentro de algún intervalo, en O(log n)
+     */
+    public boolean contains(int point) {
+        int low = 0;
+        int high = starts.length - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= point) {
+                candidate = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return candidate >= 0 && point < ends[candidate];
+    }
+    
+    /**
+     * Retorna el inicio del intervalo i, en orden ascendente
+     */
+    public int getStart(int i) {
+        return starts[i];
+    }
+    
+    /**
+     * Retorna el fin (exclusivo) del intervalo i
+     */
+    public int getEnd(int i) {
+        return ends[i];
+    }
+    
+    /**
+     * Retorna el número de intervalos tras la fusión
+     */
+    public int size() {
+        return starts.length;
+    }
+    
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.lockmeow.datastructures;
+
+/**
+ * Histograma de latencias con cubetas log-lineales: exactas hasta 32 ms y con 16
+ * subdivisiones por cada potencia de dos a partir de ahí (error relativo < 7%)
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_LIMIT = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_EXPONENT = 24; // ~4,6 horas en ms
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 5 + 1) * SUB_BUCKETS;
+    
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long max;
+    
+    /**
+     * Registra un valor en milisegundos; los negativos se cuentan como cero
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketFor(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+    
+    /**
+     * Retorna el valor por debajo del cual queda el percentil indicado (0-100)
+     */
+    public synchronized long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+    
+    public synchronized long getCount() {
+        return totalCount;
+    }
+    
+    public synchronized long getMax() {
+        return max;
+    }
+    
+    public synchronized double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+    
+    /**
+     * Limpia todos los valores registrados
+     */
+    public synchronized void clear() {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        max = 0;
+    }
+    
+    private static int bucketFor(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((value >> (exponent - 4)) & (SUB_BUCKETS - 1));
+        return LINEAR_LIMIT + (exponent - 5) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 5;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - 4);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "n=" + totalCount + " p50=" + percentile(50) + "ms p95=" + percentile(95)
+                + "ms p99=" + percentile(99) + "ms max=" + max + "ms";
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.lockmeow.datastructures;
+
+import java.util.function.Consumer;
+
+/**
+ * Rueda de temporizadores con hash (hashed timing wheel): programar y cancelar cuestan
+ * O(1) y avanzar solo visita las ranuras de los ticks transcurridos, sin recorrer
+ * todos los temporizadores pendientes
+ */
+public class TimingWheel<T> {
+    
+    /**
+     * Temporizador programado; se guarda en una lista doblemente enlazada de su ranura
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int slot = -1;
+        
+        private Timeout(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+        
+        public T getItem() {
+            return item;
+        }
+        
+        public boolean isPending() {
+            return slot >= 0;
+        }
+    }
+    
+    private final long tickMs;
+    private final int mask;
+    private final Timeout<T>[] slots;
+    private long currentTick;
+    private int size;
+    
+    /**
+     * @param tickMs    duración de cada tick en milisegundos
+     * @param wheelSize número de ranuras, se redondea a potencia de dos
+     * @param startTime instante inicial de la rueda
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, long startTime) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.slots = new Timeout[size];
+        this.currentTick = startTime / tickMs;
+    }
+    
+    /**
+     * Programa un elemento para que expire en el instante indicado
+     */
+    public Timeout<T> schedule(T item, long deadline) {
+        // Redondear hacia arriba para no expirar nunca antes de tiempo
+        long deadlineTick = Math.max((deadline + tickMs - 1) / tickMs, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, deadlineTick);
+        int slot = (int) (deadlineTick & mask);
+        timeout.slot = slot;
+        timeout.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+        return timeout;
+    }
+    
+    /**
+     * Cancela un temporizador pendiente; retorna false si ya había expirado o se había cancelado
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || !timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+    
+    /**
+     * Avanza la rueda hasta now y entrega los elementos expirados
+     */
+    public int advance(long now, Consumer<T> onExpire) {
+        long targetTick = now / tickMs;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+        // Tras una pausa larga basta con una vuelta completa: cada ranura se visita una vez
+        long ticks = Math.min(targetTick - currentTick, slots.length);
+        int expired = 0;
+        for (long i = 1; i <= ticks; i++) {
+            int slot = (int) ((currentTick + i) & mask);
+            Timeout<T> timeout = slots[slot];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineTick <= targetTick) {
+                    unlink(timeout);
+                    onExpire.accept(timeout.item);
+                    expired++;
+                }
+                timeout = next;
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+    
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+    
+    /**
+     * Retorna el número de temporizadores pendientes
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.lockmeow;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del motor de detección en la JVM usando trazas sintéticas de cambios de app
+ */
+public class DetectionEngineTest {
+    private static final String OWN = "com.example.lockmeow";
+    private static final String LOCKED = "com.instagram.android";
+    private static final String FREE = "com.android.chrome";
+
+    private DetectionEngine engine(ScriptedForegroundSource source, AdaptivePollingPolicy polling) {
+        LockPolicy policy = LockPolicy.of(Arrays.asList(LOCKED));
+        return new DetectionEngine(source, null, () -> policy, new LockSessionTracker(), polling, OWN);
+    }
+
+    @Test
+    public void locksOncePerForegroundEntry() {
+        ScriptedForegroundSource source = new ScriptedForegroundSource()
+                .at(0, FREE)
+                .at(1000, LOCKED)
+                .at(5000, OWN)
+                .at(6000, LOCKED);
+        DetectionEngine engine = engine(source, new AdaptivePollingPolicy());
+
+        int shown = 0;
+        for (long now = 0; now <= 8000; now += 500) {
+            String toLock = engine.tick(now);
+            if (toLock != null) {
+                assertEquals(LOCKED, toLock);
+                shown++;
+            }
+        }
+        assertEquals(2, shown);
+        assertEquals(4, engine.getSwitches());
+    }
+
+    @Test
+    public void fallbackIsPolledOnceUntilTheSourceAnswers() {
+        ScriptedForegroundSource source = new ScriptedForegroundSource().at(3000, FREE);
+        int[] polls = new int[1];
+        ForegroundAppSource fallback = new ForegroundAppSource() {
+            @Override
+            public String poll(long now) {
+                polls[0]++;
+                return LOCKED;
+            }
+
+            @Override
+            public long getLastSwitchTimestamp() {
+                return 0;
+            }
+        };
+        LockPolicy policy = LockPolicy.of(Arrays.asList(LOCKED));
+        DetectionEngine engine = new DetectionEngine(source, fallback, () -> policy,
+                new LockSessionTracker(), new AdaptivePollingPolicy(), OWN);
+
+        assertEquals(LOCKED, engine.tick(0));
+        for (long now = 500; now < 3000; now += 500) {
+            assertNull(engine.tick(now));
+            assertEquals(LOCKED, engine.getForegroundPackage());
+        }
+        engine.tick(3000);
+        assertEquals(FREE, engine.getForegroundPackage());
+        assertEquals(1, polls[0]);
+    }
+
+    @Test
+    public void unlockedWindowSuppressesLock() {
+        ScriptedForegroundSource source = new ScriptedForegroundSource().at(0, LOCKED);
+        DetectionEngine engine = engine(source, new AdaptivePollingPolicy());
+        engine.getSessionTracker().unlockUntil(LOCKED, 2000);
+
+        assertNull(engine.tick(0));
+        assertNull(engine.tick(1500));
+        assertEquals(LOCKED, engine.tick(2000));
+        assertNull(engine.tick(2500));
+    }
+
+    @Test
+    public void graceExpiresOnTheWheelAndRelocks() {
+        ScriptedForegroundSource source = new ScriptedForegroundSource().at(0, LOCKED);
+        DetectionEngine engine = engine(source, new AdaptivePollingPolicy());
+
+        assertEquals(LOCKED, engine.tick(0));
+        engine.grantGrace(LOCKED, 500, 5000);
+        assertEquals(1, engine.getActiveGraceCount());
+        for (long now = 1000; now < 5500; now += 500) {
+            assertNull(engine.tick(now));
+        }
+        String relocked = null;
+        for (long now = 5500; now <= 7000 && relocked == null; now += 500) {
+            relocked = engine.tick(now);
+        }
+        assertEquals(LOCKED, relocked);
+        engine.tick(7000);
+        assertEquals(0, engine.getActiveGraceCount());
+    }
+
+    @Test
+    public void pollingBacksOffWhileIdleAndSnapsBackOnSwitch() {
+        ScriptedForegroundSource source = new ScriptedForegroundSource()
+                .at(0, FREE)
+                .at(60000, LOCKED);
+        AdaptivePollingPolicy polling = new AdaptivePollingPolicy();
+        DetectionEngine engine = engine(source, polling);
+
+        long now = 0;
+        while (now < 60000) {
+            engine.tick(now);
+            now += polling.nextDelay();
+        }
+        assertEquals(AdaptivePollingPolicy.MAX_INTERVAL_MS, polling.nextDelay());
+
+        assertEquals(LOCKED, engine.tick(now));
+        assertEquals(AdaptivePollingPolicy.MIN_INTERVAL_MS, polling.nextDelay());
+    }
+
+    @Test
+    public void scheduleLocksOnlyInsideItsWindow() {
+        // El instante 0 es jueves 00:00 UTC; la regla bloquea de 00:01 a 00:02
+        LockSchedule schedule = new LockSchedule(FREE, LockSchedule.THURSDAY, 1, 2);
+        LockPolicy policy = LockPolicy.of(Collections.<String>emptyList(), Collections.singletonList(schedule));
+        ScriptedForegroundSource source = new ScriptedForegroundSource().at(0, FREE);
+        DetectionEngine engine = new DetectionEngine(source, null, () -> policy,
+                new LockSessionTracker(), new AdaptivePollingPolicy(), OWN);
+        engine.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        assertNull(engine.tick(30 * 1000));
+        assertEquals(FREE, engine.tick(60 * 1000));
+        assertNull(engine.tick(90 * 1000));
+        assertFalse(policy.isLocked(FREE, LockSchedule.minuteOfWeek(120 * 1000, TimeZone.getTimeZone("UTC"))));
+    }
+
+    @Test
+    public void quotaLocksOnceBudgetIsSpentAndSurvivesRestart() {
+        Map<String, Long> quotas = new HashMap<>();
+        quotas.put(FREE, 2000L);
+        LockPolicy policy = LockPolicy.of(Collections.<String>emptyList(),
+                Collections.<LockSchedule>emptyList(), quotas);
+        MemoryStore store = new MemoryStore();
+
+        ScriptedForegroundSource source = new ScriptedForegroundSource().at(0, FREE);
+        DetectionEngine engine = new DetectionEngine(source, null, () -> policy,
+                new LockSessionTracker(), new AdaptivePollingPolicy(), OWN);
+        engine.setTimeZone(TimeZone.getTimeZone("UTC"));
+        engine.setQuotaTracker(new UsageQuotaTracker(store));
+        assertNull(engine.tick(0));
+        assertNull(engine.tick(1000));
+        engine.pause(1500);
+        assertEquals(1500L, (long) store.usage.get(FREE));
+
+        // Un servicio nuevo retoma el contador guardado sin recorrer el historial
+        DetectionEngine restarted = new DetectionEngine(new ScriptedForegroundSource().at(0, FREE), null,
+                () -> policy, new LockSessionTracker(), new AdaptivePollingPolicy(), OWN);
+        restarted.setTimeZone(TimeZone.getTimeZone("UTC"));
+        restarted.setQuotaTracker(new UsageQuotaTracker(store));
+        assertNull(restarted.tick(10000));
+        assertEquals(FREE, restarted.tick(10500));
+    }
+
+    private static class MemoryStore implements UsageQuotaTracker.Store {
+        long day;
+        Map<String, Long> usage = new HashMap<>();
+
+        @Override
+        public long loadDay() {
+            return day;
+        }
+
+        @Override
+        public Map<String, Long> loadUsage() {
+            return new HashMap<>(usage);
+        }
+
+        @Override
+        public void save(long day, Map<String, Long> usage) {
+            this.day = day;
+            this.usage = new HashMap<>(usage);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.lockmeow;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del formato de línea del diario de bloqueos, con y sin la columna de grupo
+ */
+public class LockJournalTest {
+    private static final String PACKAGE = "com.instagram.android";
+
+    private static LockJournal.Record decodeEncoded(LockJournal.Record record) {
+        String line = record.encode();
+        assertTrue(line.endsWith("\n"));
+        // El diario se lee con readLine(), que quita el salto de línea
+        return LockJournal.Record.decode(line.substring(0, line.length() - 1));
+    }
+
+    @Test
+    public void singleRecordRoundTripsWithoutGroupColumn() {
+        LockJournal.Record record = new LockJournal.Record(5, 1000, PACKAGE, true, 0);
+
+        assertEquals("5\t1000\tL\t" + PACKAGE + "\n", record.encode());
+        LockJournal.Record decoded = decodeEncoded(record);
+        assertNotNull(decoded);
+        assertEquals(5, decoded.getSeq());
+        assertEquals(1000, decoded.getTimestamp());
+        assertEquals(PACKAGE, decoded.getPackageName());
+        assertTrue(decoded.isLocked());
+        assertEquals(0, decoded.getGroup());
+    }
+
+    @Test
+    public void groupedRecordRoundTripsWithGroupColumn() {
+        LockJournal.Record record = new LockJournal.Record(9, 2000, PACKAGE, false, 7);
+
+        assertEquals("9\t2000\tU\t" + PACKAGE + "\t7\n", record.encode());
+        LockJournal.Record decoded = decodeEncoded(record);
+        assertNotNull(decoded);
+        assertEquals(9, decoded.getSeq());
+        assertEquals(2000, decoded.getTimestamp());
+        assertEquals(PACKAGE, decoded.getPackageName());
+        assertFalse(decoded.isLocked());
+        assertEquals(7, decoded.getGroup());
+    }
+
+    @Test
+    public void tornOrCorruptLinesAreSkipped() {
+        assertNull(LockJournal.Record.decode(""));
+        assertNull(LockJournal.Record.decode("5\t1000\tL"));
+        assertNull(LockJournal.Record.decode("5\t1000\tL\t"));
+        assertNull(LockJournal.Record.decode("x\t1000\tL\t" + PACKAGE));
+        assertNull(LockJournal.Record.decode("5\t1000\tL\t" + PACKAGE + "\tg"));
+        assertNull(LockJournal.Record.decode("5\t1000\tL\t" + PACKAGE + "\t7\textra"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.lockmeow;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del formato binario de la política: lo que se codifica se lee igual desde el
+ * búfer, y un archivo cortado o dañado se rechaza en vez de leerse fuera de límites
+ */
+public class MappedLockPolicyTest {
+    private static final String LOCKED = "com.instagram.android";
+    private static final String QUOTA = "com.zhiliaoapp.musically";
+    private static final String SCHEDULED = "com.whatsapp";
+    private static final int MONDAY_9AM = 9 * 60;
+    private static final int WEDNESDAY_10AM = 2 * LockSchedule.MINUTES_PER_DAY + 10 * 60;
+
+    private static MappedLockPolicy roundTrip(LockPolicy policy) {
+        return MappedLockPolicy.wrap(MappedLockPolicy.encode(policy));
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer, int length) {
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), length));
+    }
+
+    @Test
+    public void roundTripKeepsLocksQuotasAndHeader() {
+        Map<String, Long> quotas = new HashMap<>();
+        quotas.put(QUOTA, 30 * 60 * 1000L);
+        LockPolicy policy = LockPolicy.of(Arrays.asList(LOCKED, "com.android.chrome"),
+                Collections.<LockSchedule>emptyList(), quotas).withJournalSeq(42).withRulesVersion(7);
+
+        MappedLockPolicy mapped = roundTrip(policy);
+
+        assertNotNull(mapped);
+        assertEquals(2, mapped.size());
+        assertEquals(42, mapped.getJournalSeq());
+        assertEquals(7, mapped.getRulesVersion());
+        assertTrue(mapped.isLocked(LOCKED, MONDAY_9AM));
+        assertTrue(mapped.isLocked("com.android.chrome", MONDAY_9AM));
+        assertFalse(mapped.isLocked(QUOTA, MONDAY_9AM));
+        assertEquals(30 * 60 * 1000L, mapped.getQuotaMillis(QUOTA));
+        assertEquals(0, mapped.getQuotaMillis(LOCKED));
+        assertFalse(mapped.isLocked("com.example.unknown", MONDAY_9AM));
+        assertEquals(0, mapped.getQuotaMillis("com.example.unknown"));
+    }
+
+    @Test
+    public void hashCollisionsAreResolvedByName() {
+        // "Aa" y "BB" tienen el mismo hashCode, así que estos cuatro nombres también
+        assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+        assertEquals("AaBB".hashCode(), "BBAa".hashCode());
+        assertEquals("AaAa".hashCode(), "AaBB".hashCode());
+        Map<String, Long> quotas = new HashMap<>();
+        quotas.put("AaBB", 60 * 1000L);
+        LockPolicy policy = LockPolicy.of(Arrays.asList("BBBB", "AaAa"),
+                Collections.<LockSchedule>emptyList(), quotas);
+
+        MappedLockPolicy mapped = roundTrip(policy);
+
+        assertNotNull(mapped);
+        assertTrue(mapped.isLocked("AaAa", 0));
+        assertTrue(mapped.isLocked("BBBB", 0));
+        assertFalse(mapped.isLocked("AaBB", 0));
+        assertEquals(60 * 1000L, mapped.getQuotaMillis("AaBB"));
+        assertFalse(mapped.isLocked("BBAa", 0));
+        assertEquals(0, mapped.getQuotaMillis("BBAa"));
+    }
+
+    @Test
+    public void scheduleIntervalsMatchTheInMemoryPolicy() {
+        LockPolicy policy = LockPolicy.of(Collections.<String>emptyList(), Arrays.asList(
+                new LockSchedule(SCHEDULED, LockSchedule.MONDAY | LockSchedule.WEDNESDAY, 9 * 60, 17 * 60),
+                // Domingo 23:00 a lunes 01:00: cruza el final de la semana
+                new LockSchedule(SCHEDULED, LockSchedule.SUNDAY, 23 * 60, 60)));
+
+        MappedLockPolicy mapped = roundTrip(policy);
+
+        assertNotNull(mapped);
+        assertTrue(mapped.isLocked(SCHEDULED, MONDAY_9AM));
+        assertFalse(mapped.isLocked(SCHEDULED, MONDAY_9AM - 1));
+        assertFalse(mapped.isLocked(SCHEDULED, 17 * 60));
+        assertTrue(mapped.isLocked(SCHEDULED, WEDNESDAY_10AM));
+        assertFalse(mapped.isLocked(SCHEDULED, LockSchedule.MINUTES_PER_DAY + 10 * 60));
+        assertTrue(mapped.isLocked(SCHEDULED, 30));
+        assertTrue(mapped.isLocked(SCHEDULED, LockSchedule.MINUTES_PER_WEEK - 1));
+        for (int minute = 0; minute < LockSchedule.MINUTES_PER_WEEK; minute++) {
+            assertEquals("minuto " + minute, policy.isLocked(SCHEDULED, minute), mapped.isLocked(SCHEDULED, minute));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedOrCorruptFiles() {
+        Map<String, Long> quotas = new HashMap<>();
+        quotas.put(QUOTA, 1000L);
+        LockPolicy policy = LockPolicy.of(Arrays.asList(LOCKED),
+                Collections.singletonList(new LockSchedule(SCHEDULED, LockSchedule.EVERY_DAY, 0, 60)), quotas);
+        ByteBuffer encoded = MappedLockPolicy.encode(policy);
+        int size = encoded.limit();
+
+        assertNotNull(MappedLockPolicy.wrap(copy(encoded, size)));
+        // Escritura cortada: cabecera incompleta, entradas incompletas o nombres incompletos
+        assertNull(MappedLockPolicy.wrap(copy(encoded, 10)));
+        assertNull(MappedLockPolicy.wrap(copy(encoded, 24 + 32)));
+        assertNull(MappedLockPolicy.wrap(copy(encoded, size - 1)));
+
+        ByteBuffer badMagic = copy(encoded, size);
+        badMagic.putInt(0, 0);
+        assertNull(MappedLockPolicy.wrap(badMagic));
+
+        ByteBuffer oldVersion = copy(encoded, size);
+        oldVersion.putInt(4, 1);
+        assertNull(MappedLockPolicy.wrap(oldVersion));
+
+        ByteBuffer hugeCount = copy(encoded, size);
+        hugeCount.putInt(16, Integer.MAX_VALUE);
+        assertNull(MappedLockPolicy.wrap(hugeCount));
+
+        // Primera entrada con el nombre fuera del búfer
+        ByteBuffer badName = copy(encoded, size);
+        badName.putInt(24 + 16, size);
+        assertNull(MappedLockPolicy.wrap(badName));
+
+        // Primera entrada con más intervalos de los que caben
+        ByteBuffer badIntervals = copy(encoded, size);
+        badIntervals.putInt(24 + 28, Integer.MAX_VALUE);
+        assertNull(MappedLockPolicy.wrap(badIntervals));
+    }
+}